@@ -0,0 +1,138 @@
+/*
+ * This file is part of synapse, licensed under the MIT License.
+ *
+ *  Copyright (c) lucko (Luck) <luck@lucko.me>
+ *  Copyright (c) contributors
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package me.lucko.synapse.benchmarks;
+
+import me.lucko.synapse.generic.ContextInterner;
+import me.lucko.synapse.generic.SimpleContext;
+import me.lucko.synapse.generic.future.CompletedFutureResult;
+import me.lucko.synapse.permission.PermissionService;
+import me.lucko.synapse.permission.context.Context;
+import me.lucko.synapse.permission.options.SetOptions;
+import me.lucko.synapse.permission.options.UnsetOptions;
+import me.lucko.synapse.permission.subject.Group;
+import me.lucko.synapse.permission.subject.User;
+import me.lucko.synapse.util.FutureResult;
+
+import org.bukkit.entity.Player;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * An in-memory, read-only {@link PermissionService} used as a stand-in for a
+ * real provider. Data is set up through {@link InMemorySubject}.
+ */
+public class InMemoryPermissionService implements PermissionService {
+    private final Map<UUID, InMemoryUser> users = new ConcurrentHashMap<>();
+    private final Map<String, InMemoryGroup> groups = new ConcurrentHashMap<>();
+    private final ContextInterner<SimpleContext> contexts = new ContextInterner<>(SimpleContext::new);
+
+    public InMemoryUser createUser(UUID uuid, String name) {
+        return users.computeIfAbsent(uuid, u -> new InMemoryUser(this, u, name));
+    }
+
+    public InMemoryGroup createGroup(String name) {
+        return groups.computeIfAbsent(name, n -> new InMemoryGroup(this, n));
+    }
+
+    @Nonnull
+    @Override
+    public String getProviderName() {
+        return "in-memory";
+    }
+
+    @Nonnull
+    @Override
+    public User getUser(@Nonnull Player player) {
+        return createUser(player.getUniqueId(), player.getName());
+    }
+
+    @Nullable
+    @Override
+    public User getUser(@Nonnull UUID uniqueId) {
+        return users.get(uniqueId);
+    }
+
+    @Nonnull
+    @Override
+    public FutureResult<User> loadUser(@Nonnull UUID uniqueId) {
+        return new CompletedFutureResult<>(getUser(uniqueId));
+    }
+
+    @Nonnull
+    @Override
+    public Collection<Group> getGroups() {
+        return new ArrayList<>(groups.values());
+    }
+
+    @Nullable
+    @Override
+    public Group getGroup(@Nonnull String name) {
+        return groups.get(name);
+    }
+
+    @Nonnull
+    @Override
+    public SetOptions getNormalSetOptions() {
+        throw new UnsupportedOperationException("the in-memory service is read-only");
+    }
+
+    @Nonnull
+    @Override
+    public UnsetOptions getNormalUnsetOptions() {
+        throw new UnsupportedOperationException("the in-memory service is read-only");
+    }
+
+    @Override
+    public boolean supportsContextType(@Nonnull String key) {
+        return key.equals("world");
+    }
+
+    @Nonnull
+    @Override
+    public Context createContext(@Nonnull String key, @Nonnull String value) throws IllegalArgumentException {
+        if (!key.equals("world")) {
+            throw new IllegalArgumentException("Key not supported: " + key);
+        }
+        return contexts.intern(key, value);
+    }
+
+    static String getWorld(Set<Context> contexts) {
+        for (Context context : contexts) {
+            if (context.getKey().equals("world")) {
+                return context.getValue();
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,243 @@
+/*
+ * This file is part of synapse, licensed under the MIT License.
+ *
+ *  Copyright (c) lucko (Luck) <luck@lucko.me>
+ *  Copyright (c) contributors
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package me.lucko.synapse.benchmarks;
+
+import me.lucko.synapse.generic.AbstractSubject;
+import me.lucko.synapse.generic.SimpleGroupMembership;
+import me.lucko.synapse.generic.SimplePermissionNode;
+import me.lucko.synapse.permission.context.Context;
+import me.lucko.synapse.permission.membership.GroupMembership;
+import me.lucko.synapse.permission.node.PermissionNode;
+import me.lucko.synapse.permission.options.SetOptions;
+import me.lucko.synapse.permission.options.UnsetOptions;
+import me.lucko.synapse.permission.subject.Group;
+import me.lucko.synapse.util.FutureAction;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * Base class for the in-memory users and groups. World contexts are ignored.
+ */
+public abstract class InMemorySubject extends AbstractSubject {
+    private final Map<String, Boolean> permissions = new ConcurrentHashMap<>();
+    private final List<InMemoryGroup> parents = new CopyOnWriteArrayList<>();
+    private final Map<String, String> metadata = new ConcurrentHashMap<>();
+    private volatile String prefix = null;
+    private volatile String suffix = null;
+
+    protected InMemorySubject(InMemoryPermissionService service) {
+        super(service);
+    }
+
+    public InMemorySubject permission(String permission, boolean value) {
+        permissions.put(permission, value);
+        return this;
+    }
+
+    public InMemorySubject parent(InMemoryGroup group) {
+        parents.add(group);
+        return this;
+    }
+
+    public InMemorySubject prefix(String prefix) {
+        this.prefix = prefix;
+        return this;
+    }
+
+    public InMemorySubject suffix(String suffix) {
+        this.suffix = suffix;
+        return this;
+    }
+
+    public InMemorySubject metadata(String key, String value) {
+        metadata.put(key, value);
+        return this;
+    }
+
+    protected List<InMemoryGroup> getParents() {
+        return parents;
+    }
+
+    Boolean lookup(String permission) {
+        Boolean value = permissions.get(permission);
+        if (value != null) {
+            return value;
+        }
+        for (InMemoryGroup parent : parents) {
+            value = parent.lookup(permission);
+            if (value != null) {
+                return value;
+            }
+        }
+        return null;
+    }
+
+    @Nonnull
+    @Override
+    public Collection<PermissionNode> getPermissions() {
+        List<PermissionNode> nodes = new ArrayList<>(permissions.size());
+        for (Map.Entry<String, Boolean> entry : permissions.entrySet()) {
+            nodes.add(SimplePermissionNode.of(entry.getKey(), entry.getValue()));
+        }
+        return nodes;
+    }
+
+    @Nonnull
+    @Override
+    public Collection<GroupMembership> getGroups() {
+        List<GroupMembership> memberships = new ArrayList<>(parents.size());
+        for (InMemoryGroup parent : parents) {
+            memberships.add(SimpleGroupMembership.of(parent));
+        }
+        return memberships;
+    }
+
+    @Override
+    public boolean checkPermission(@Nonnull String permission) {
+        Boolean value = lookup(permission);
+        return value != null && value;
+    }
+
+    @Override
+    public boolean checkPermission(@Nonnull String permission, @Nonnull Set<Context> contexts) {
+        return checkPermission(permission);
+    }
+
+    @Nullable
+    @Override
+    public String getPrefix() {
+        if (prefix != null) {
+            return prefix;
+        }
+        for (InMemoryGroup parent : parents) {
+            String prefix = parent.getPrefix();
+            if (prefix != null) {
+                return prefix;
+            }
+        }
+        return null;
+    }
+
+    @Nullable
+    @Override
+    public String getPrefix(@Nonnull Set<Context> contexts) {
+        return getPrefix();
+    }
+
+    @Nullable
+    @Override
+    public String getSuffix() {
+        if (suffix != null) {
+            return suffix;
+        }
+        for (InMemoryGroup parent : parents) {
+            String suffix = parent.getSuffix();
+            if (suffix != null) {
+                return suffix;
+            }
+        }
+        return null;
+    }
+
+    @Nullable
+    @Override
+    public String getSuffix(@Nonnull Set<Context> contexts) {
+        return getSuffix();
+    }
+
+    @Nullable
+    @Override
+    public String getMetadata(@Nonnull String key) {
+        String value = metadata.get(key);
+        if (value != null) {
+            return value;
+        }
+        for (InMemoryGroup parent : parents) {
+            value = parent.getMetadata(key);
+            if (value != null) {
+                return value;
+            }
+        }
+        return null;
+    }
+
+    @Nullable
+    @Override
+    public String getMetadata(@Nonnull String key, @Nonnull Set<Context> contexts) {
+        return getMetadata(key);
+    }
+
+    @Nonnull
+    @Override
+    public FutureAction setPermission(@Nonnull String permission, @Nonnull SetOptions options) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Nonnull
+    @Override
+    public FutureAction unsetPermission(@Nonnull String permission, @Nonnull UnsetOptions options) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Nonnull
+    @Override
+    public FutureAction addGroup(@Nonnull Group group, @Nonnull SetOptions options) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Nonnull
+    @Override
+    public FutureAction removeGroup(@Nonnull Group group, @Nonnull UnsetOptions options) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Nonnull
+    @Override
+    public FutureAction setPrefix(@Nullable String prefix, @Nonnull SetOptions options) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Nonnull
+    @Override
+    public FutureAction setSuffix(@Nullable String suffix, @Nonnull SetOptions options) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Nonnull
+    @Override
+    public FutureAction setMetadata(@Nonnull String key, @Nullable String value, @Nonnull SetOptions options) {
+        throw new UnsupportedOperationException();
+    }
+}
@@ -0,0 +1,73 @@
+/*
+ * This file is part of synapse, licensed under the MIT License.
+ *
+ *  Copyright (c) lucko (Luck) <luck@lucko.me>
+ *  Copyright (c) contributors
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package me.lucko.synapse.benchmarks;
+
+import me.lucko.synapse.permission.context.Context;
+import me.lucko.synapse.permission.subject.Group;
+import me.lucko.synapse.permission.subject.User;
+
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+public class InMemoryUser extends InMemorySubject implements User {
+    private final UUID uuid;
+    private final String name;
+
+    InMemoryUser(InMemoryPermissionService service, UUID uuid, String name) {
+        super(service);
+        this.uuid = uuid;
+        this.name = name;
+    }
+
+    @Nonnull
+    @Override
+    public UUID getUniqueId() {
+        return uuid;
+    }
+
+    @Nullable
+    @Override
+    public String getUsername() {
+        return name;
+    }
+
+    @Nullable
+    @Override
+    public Group getPrimaryGroup() {
+        List<InMemoryGroup> parents = getParents();
+        return parents.isEmpty() ? null : parents.get(0);
+    }
+
+    @Nullable
+    @Override
+    public Group getPrimaryGroup(Set<Context> contexts) {
+        return getPrimaryGroup();
+    }
+}
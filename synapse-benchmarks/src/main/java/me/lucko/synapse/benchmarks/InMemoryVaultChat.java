@@ -0,0 +1,229 @@
+/*
+ * This file is part of synapse, licensed under the MIT License.
+ *
+ *  Copyright (c) lucko (Luck) <luck@lucko.me>
+ *  Copyright (c) contributors
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package me.lucko.synapse.benchmarks;
+
+import net.milkbowl.vault.chat.Chat;
+import net.milkbowl.vault.permission.Permission;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * An in-memory Vault {@link Chat} implementation, keyed by player/group name.
+ *
+ * <p>World arguments are ignored, and all values are stored as strings.</p>
+ */
+public class InMemoryVaultChat extends Chat {
+    private static final String PREFIX = "prefix";
+    private static final String SUFFIX = "suffix";
+
+    private final Map<String, Map<String, String>> players = new ConcurrentHashMap<>();
+    private final Map<String, Map<String, String>> groups = new ConcurrentHashMap<>();
+
+    public InMemoryVaultChat(Permission perms) {
+        super(perms);
+    }
+
+    private String getPlayer(String player, String key) {
+        Map<String, String> values = players.get(player);
+        return values == null ? null : values.get(key);
+    }
+
+    private void setPlayer(String player, String key, Object value) {
+        Map<String, String> values = players.computeIfAbsent(player, p -> new ConcurrentHashMap<>());
+        if (value == null) {
+            values.remove(key);
+        } else {
+            values.put(key, value.toString());
+        }
+    }
+
+    private String getGroup(String group, String key) {
+        Map<String, String> values = groups.get(group);
+        return values == null ? null : values.get(key);
+    }
+
+    private void setGroup(String group, String key, Object value) {
+        Map<String, String> values = groups.computeIfAbsent(group, g -> new ConcurrentHashMap<>());
+        if (value == null) {
+            values.remove(key);
+        } else {
+            values.put(key, value.toString());
+        }
+    }
+
+    private static int toInt(String s, int def) {
+        try {
+            return s == null ? def : Integer.parseInt(s);
+        } catch (NumberFormatException e) {
+            return def;
+        }
+    }
+
+    private static double toDouble(String s, double def) {
+        try {
+            return s == null ? def : Double.parseDouble(s);
+        } catch (NumberFormatException e) {
+            return def;
+        }
+    }
+
+    private static boolean toBoolean(String s, boolean def) {
+        return s == null ? def : Boolean.parseBoolean(s);
+    }
+
+    @Override
+    public String getName() {
+        return "in-memory";
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return true;
+    }
+
+    @Override
+    public String getPlayerPrefix(String world, String player) {
+        return getPlayer(player, PREFIX);
+    }
+
+    @Override
+    public void setPlayerPrefix(String world, String player, String prefix) {
+        setPlayer(player, PREFIX, prefix);
+    }
+
+    @Override
+    public String getPlayerSuffix(String world, String player) {
+        return getPlayer(player, SUFFIX);
+    }
+
+    @Override
+    public void setPlayerSuffix(String world, String player, String suffix) {
+        setPlayer(player, SUFFIX, suffix);
+    }
+
+    @Override
+    public String getGroupPrefix(String world, String group) {
+        return getGroup(group, PREFIX);
+    }
+
+    @Override
+    public void setGroupPrefix(String world, String group, String prefix) {
+        setGroup(group, PREFIX, prefix);
+    }
+
+    @Override
+    public String getGroupSuffix(String world, String group) {
+        return getGroup(group, SUFFIX);
+    }
+
+    @Override
+    public void setGroupSuffix(String world, String group, String suffix) {
+        setGroup(group, SUFFIX, suffix);
+    }
+
+    @Override
+    public int getPlayerInfoInteger(String world, String player, String node, int defaultValue) {
+        return toInt(getPlayer(player, node), defaultValue);
+    }
+
+    @Override
+    public void setPlayerInfoInteger(String world, String player, String node, int value) {
+        setPlayer(player, node, value);
+    }
+
+    @Override
+    public int getGroupInfoInteger(String world, String group, String node, int defaultValue) {
+        return toInt(getGroup(group, node), defaultValue);
+    }
+
+    @Override
+    public void setGroupInfoInteger(String world, String group, String node, int value) {
+        setGroup(group, node, value);
+    }
+
+    @Override
+    public double getPlayerInfoDouble(String world, String player, String node, double defaultValue) {
+        return toDouble(getPlayer(player, node), defaultValue);
+    }
+
+    @Override
+    public void setPlayerInfoDouble(String world, String player, String node, double value) {
+        setPlayer(player, node, value);
+    }
+
+    @Override
+    public double getGroupInfoDouble(String world, String group, String node, double defaultValue) {
+        return toDouble(getGroup(group, node), defaultValue);
+    }
+
+    @Override
+    public void setGroupInfoDouble(String world, String group, String node, double value) {
+        setGroup(group, node, value);
+    }
+
+    @Override
+    public boolean getPlayerInfoBoolean(String world, String player, String node, boolean defaultValue) {
+        return toBoolean(getPlayer(player, node), defaultValue);
+    }
+
+    @Override
+    public void setPlayerInfoBoolean(String world, String player, String node, boolean value) {
+        setPlayer(player, node, value);
+    }
+
+    @Override
+    public boolean getGroupInfoBoolean(String world, String group, String node, boolean defaultValue) {
+        return toBoolean(getGroup(group, node), defaultValue);
+    }
+
+    @Override
+    public void setGroupInfoBoolean(String world, String group, String node, boolean value) {
+        setGroup(group, node, value);
+    }
+
+    @Override
+    public String getPlayerInfoString(String world, String player, String node, String defaultValue) {
+        String value = getPlayer(player, node);
+        return value == null ? defaultValue : value;
+    }
+
+    @Override
+    public void setPlayerInfoString(String world, String player, String node, String value) {
+        setPlayer(player, node, value);
+    }
+
+    @Override
+    public String getGroupInfoString(String world, String group, String node, String defaultValue) {
+        String value = getGroup(group, node);
+        return value == null ? defaultValue : value;
+    }
+
+    @Override
+    public void setGroupInfoString(String world, String group, String node, String value) {
+        setGroup(group, node, value);
+    }
+}
@@ -0,0 +1,151 @@
+/*
+ * This file is part of synapse, licensed under the MIT License.
+ *
+ *  Copyright (c) lucko (Luck) <luck@lucko.me>
+ *  Copyright (c) contributors
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package me.lucko.synapse.benchmarks;
+
+import net.milkbowl.vault.permission.Permission;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * An in-memory Vault {@link Permission} implementation, keyed by player name.
+ *
+ * <p>World arguments are ignored.</p>
+ */
+public class InMemoryVaultPermission extends Permission {
+    private final Map<String, Map<String, Boolean>> players = new ConcurrentHashMap<>();
+    private final Map<String, List<String>> playerGroups = new ConcurrentHashMap<>();
+    private final Map<String, Map<String, Boolean>> groups = new ConcurrentHashMap<>();
+
+    private Map<String, Boolean> player(String player) {
+        return players.computeIfAbsent(player, p -> new ConcurrentHashMap<>());
+    }
+
+    private List<String> playerGroups(String player) {
+        return playerGroups.computeIfAbsent(player, p -> new CopyOnWriteArrayList<>());
+    }
+
+    private Map<String, Boolean> group(String group) {
+        return groups.computeIfAbsent(group, g -> new ConcurrentHashMap<>());
+    }
+
+    @Override
+    public String getName() {
+        return "in-memory";
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return true;
+    }
+
+    @Override
+    public boolean hasSuperPermsCompat() {
+        return true;
+    }
+
+    @Override
+    public boolean hasGroupSupport() {
+        return true;
+    }
+
+    @Override
+    public boolean playerHas(String world, String player, String permission) {
+        Boolean value = player(player).get(permission);
+        if (value != null) {
+            return value;
+        }
+        for (String group : playerGroups(player)) {
+            value = group(group).get(permission);
+            if (value != null) {
+                return value;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public boolean playerAdd(String world, String player, String permission) {
+        player(player).put(permission, true);
+        return true;
+    }
+
+    @Override
+    public boolean playerRemove(String world, String player, String permission) {
+        return player(player).remove(permission) != null;
+    }
+
+    @Override
+    public boolean groupHas(String world, String group, String permission) {
+        return group(group).getOrDefault(permission, false);
+    }
+
+    @Override
+    public boolean groupAdd(String world, String group, String permission) {
+        group(group).put(permission, true);
+        return true;
+    }
+
+    @Override
+    public boolean groupRemove(String world, String group, String permission) {
+        return group(group).remove(permission) != null;
+    }
+
+    @Override
+    public boolean playerInGroup(String world, String player, String group) {
+        return playerGroups(player).contains(group);
+    }
+
+    @Override
+    public boolean playerAddGroup(String world, String player, String group) {
+        group(group);
+        return playerGroups(player).add(group);
+    }
+
+    @Override
+    public boolean playerRemoveGroup(String world, String player, String group) {
+        return playerGroups(player).remove(group);
+    }
+
+    @Override
+    public String[] getPlayerGroups(String world, String player) {
+        return playerGroups(player).toArray(new String[0]);
+    }
+
+    @Override
+    public String getPrimaryGroup(String world, String player) {
+        List<String> groups = playerGroups(player);
+        return groups.isEmpty() ? null : groups.get(0);
+    }
+
+    @Override
+    public String[] getGroups() {
+        return new ArrayList<>(groups.keySet()).toArray(new String[0]);
+    }
+}
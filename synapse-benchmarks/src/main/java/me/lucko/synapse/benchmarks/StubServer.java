@@ -0,0 +1,142 @@
+/*
+ * This file is part of synapse, licensed under the MIT License.
+ *
+ *  Copyright (c) lucko (Luck) <luck@lucko.me>
+ *  Copyright (c) contributors
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package me.lucko.synapse.benchmarks;
+
+import org.bukkit.Bukkit;
+import org.bukkit.OfflinePlayer;
+import org.bukkit.Server;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Collections;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Logger;
+
+/**
+ * A minimal stand-in {@link Server}, so code which calls into {@link Bukkit}
+ * can be benchmarked without a running server.
+ *
+ * <p>All players are offline. Methods which aren't needed return null, false
+ * or zero.</p>
+ */
+public final class StubServer {
+    private static final Logger LOGGER = Logger.getLogger("synapse-benchmarks");
+    private static final Map<UUID, OfflinePlayer> PLAYERS = new ConcurrentHashMap<>();
+
+    public static synchronized void install() {
+        if (Bukkit.getServer() != null) {
+            return;
+        }
+
+        Server server = (Server) Proxy.newProxyInstance(StubServer.class.getClassLoader(), new Class[]{Server.class}, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "getName":
+                case "getVersion":
+                case "getBukkitVersion":
+                    return "stub";
+                case "getLogger":
+                    return LOGGER;
+                case "getOnlinePlayers":
+                    return Collections.emptyList();
+                case "getOfflinePlayer":
+                    if (args[0] instanceof UUID) {
+                        return PLAYERS.computeIfAbsent((UUID) args[0], uuid -> offlinePlayer(uuid, null));
+                    }
+                    return null;
+                default:
+                    return defaultValue(method);
+            }
+        });
+        Bukkit.setServer(server);
+    }
+
+    /**
+     * Registers an offline player with the stub server.
+     *
+     * @param uuid the player's unique id
+     * @param name the player's name
+     * @return the player
+     */
+    public static OfflinePlayer registerPlayer(UUID uuid, String name) {
+        OfflinePlayer player = offlinePlayer(uuid, name);
+        PLAYERS.put(uuid, player);
+        return player;
+    }
+
+    private static OfflinePlayer offlinePlayer(UUID uuid, String name) {
+        return (OfflinePlayer) Proxy.newProxyInstance(StubServer.class.getClassLoader(), new Class[]{OfflinePlayer.class}, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "getUniqueId":
+                    return uuid;
+                case "getName":
+                    return name;
+                case "hasPlayedBefore":
+                    return true;
+                case "hashCode":
+                    return uuid.hashCode();
+                case "equals":
+                    return proxy == args[0];
+                default:
+                    return defaultValue(method);
+            }
+        });
+    }
+
+    private static Object defaultValue(Method method) {
+        Class<?> type = method.getReturnType();
+        if (!type.isPrimitive() || type == void.class) {
+            return null;
+        }
+        if (type == boolean.class) {
+            return false;
+        }
+        if (type == char.class) {
+            return '\0';
+        }
+        if (type == long.class) {
+            return 0L;
+        }
+        if (type == double.class) {
+            return 0D;
+        }
+        if (type == float.class) {
+            return 0F;
+        }
+        if (type == short.class) {
+            return (short) 0;
+        }
+        if (type == byte.class) {
+            return (byte) 0;
+        }
+        return 0;
+    }
+
+    private StubServer() {
+        throw new AssertionError();
+    }
+}
@@ -0,0 +1,150 @@
+/*
+ * This file is part of synapse, licensed under the MIT License.
+ *
+ *  Copyright (c) lucko (Luck) <luck@lucko.me>
+ *  Copyright (c) contributors
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package me.lucko.synapse.benchmarks;
+
+import me.lucko.synapse.vaultprovider.PermissionDecisionCache;
+import me.lucko.synapse.vaultprovider.PlayerNameResolver;
+import me.lucko.synapse.vaultprovider.SynapseVaultChat;
+import me.lucko.synapse.vaultprovider.SynapseVaultPermission;
+import me.lucko.synapse.vaultprovider.TypedMetaCache;
+import me.lucko.synapse.vaultprovider.VaultCallMetrics;
+import me.lucko.synapse.vaultprovider.WorldContextCache;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the Vault API implemented over synapse (synapse-vault), backed by
+ * an {@link InMemoryPermissionService}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class VaultBridgeBenchmark {
+    private static final String WORLD = "world";
+    private static final String PLAYER = "Player";
+    private static final String PERMISSION = "example.node.25";
+
+    @Param({"false", "true"})
+    public boolean decisionCache;
+
+    @Param({"false", "true"})
+    public boolean callMetrics;
+
+    private UUID uuid;
+    private SynapseVaultPermission permission;
+    private SynapseVaultChat chat;
+
+    @Setup
+    public void setup() {
+        uuid = UUID.randomUUID();
+
+        InMemoryPermissionService service = new InMemoryPermissionService();
+        InMemoryGroup defaultGroup = service.createGroup("default");
+        defaultGroup.prefix("[Default] ").metadata("level", "1");
+        InMemoryGroup vipGroup = service.createGroup("vip");
+        vipGroup.parent(defaultGroup).prefix("[VIP] ");
+
+        InMemoryUser user = service.createUser(uuid, PLAYER);
+        user.parent(vipGroup).metadata("level", "42");
+        for (int i = 0; i < 50; i++) {
+            defaultGroup.permission("default.node." + i, true);
+            user.permission("example.node." + i, true);
+        }
+
+        PlayerNameResolver resolver = new PlayerNameResolver(null);
+        resolver.put(PLAYER, uuid);
+
+        WorldContextCache worldContexts = new WorldContextCache(service, world -> true);
+        PermissionDecisionCache cache = decisionCache ? new PermissionDecisionCache(512, 1, TimeUnit.HOURS) : null;
+
+        VaultCallMetrics metrics = new VaultCallMetrics(callMetrics);
+
+        TypedMetaCache metaCache = new TypedMetaCache(1, TimeUnit.HOURS);
+        permission = new SynapseVaultPermission(null, service, resolver, worldContexts, null, cache, metaCache, metrics);
+        chat = new SynapseVaultChat(service, permission, resolver, worldContexts, null, metaCache, metrics);
+    }
+
+    @Benchmark
+    public boolean has() {
+        return permission.has(WORLD, PLAYER, PERMISSION);
+    }
+
+    @Benchmark
+    public boolean hasByUniqueId() {
+        return permission.hasPermission(WORLD, uuid, PERMISSION);
+    }
+
+    @Benchmark
+    public boolean hasInherited() {
+        return permission.has(WORLD, PLAYER, "default.node.25");
+    }
+
+    @Benchmark
+    public boolean playerInGroup() {
+        return permission.playerInGroup(WORLD, PLAYER, "vip");
+    }
+
+    @Benchmark
+    public String getPrimaryGroup() {
+        return permission.getPrimaryGroup(WORLD, PLAYER);
+    }
+
+    @Benchmark
+    public String getPlayerPrefix() {
+        return chat.getPlayerPrefix(WORLD, PLAYER);
+    }
+
+    @Benchmark
+    public String getGroupPrefix() {
+        return chat.getGroupPrefix(WORLD, "vip");
+    }
+
+    @Benchmark
+    public String getPlayerInfoString() {
+        return chat.getPlayerInfoString(WORLD, PLAYER, "level", null);
+    }
+
+    @Benchmark
+    public int getPlayerInfoInteger() {
+        return chat.getPlayerInfoInteger(WORLD, PLAYER, "level", 0);
+    }
+}
@@ -0,0 +1,144 @@
+/*
+ * This file is part of synapse, licensed under the MIT License.
+ *
+ *  Copyright (c) lucko (Luck) <luck@lucko.me>
+ *  Copyright (c) contributors
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package me.lucko.synapse.benchmarks;
+
+import me.lucko.synapse.vaultprovider.PermissionDecisionCache;
+import me.lucko.synapse.vaultprovider.PlayerNameResolver;
+import me.lucko.synapse.vaultprovider.SynapseVaultPermission;
+import me.lucko.synapse.vaultprovider.VaultCallMetrics;
+import me.lucko.synapse.vaultprovider.WorldContextCache;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.Result;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Checks that the Vault permission read path (synapse-vault) does not
+ * allocate once warmed up.
+ *
+ * <p>Running this class's {@link #main(String[])} runs the benchmarks with
+ * the GC profiler attached, and exits with a non-zero status if any of them
+ * allocates more than {@code synapse.alloc-limit} bytes/op (default 16, to
+ * allow for measurement noise).</p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class VaultReadAllocationBenchmark {
+    private static final String WORLD = "world";
+    private static final String PERMISSION = "example.node.25";
+    private static final String ALLOC_RATE_NORM = "gc.alloc.rate.norm";
+
+    @Param({"false", "true"})
+    public boolean decisionCache;
+
+    private UUID uuid;
+    private SynapseVaultPermission permission;
+
+    @Setup
+    public void setup() {
+        uuid = UUID.randomUUID();
+
+        InMemoryPermissionService service = new InMemoryPermissionService();
+        InMemoryGroup defaultGroup = service.createGroup("default");
+        InMemoryUser user = service.createUser(uuid, "player");
+        user.parent(defaultGroup);
+        for (int i = 0; i < 50; i++) {
+            defaultGroup.permission("default.node." + i, true);
+            user.permission("example.node." + i, true);
+        }
+
+        WorldContextCache worldContexts = new WorldContextCache(service, world -> true);
+        PermissionDecisionCache cache = decisionCache ? new PermissionDecisionCache(512, 1, TimeUnit.HOURS) : null;
+        permission = new SynapseVaultPermission(null, service, new PlayerNameResolver(null), worldContexts, null, cache, null, new VaultCallMetrics(false));
+    }
+
+    @Benchmark
+    public boolean hasPermission() {
+        return permission.hasPermission(WORLD, uuid, PERMISSION);
+    }
+
+    @Benchmark
+    public boolean hasPermissionInherited() {
+        return permission.hasPermission(WORLD, uuid, "default.node.25");
+    }
+
+    @Benchmark
+    public boolean hasPermissionGlobal() {
+        return permission.hasPermission(null, uuid, PERMISSION);
+    }
+
+    public static void main(String[] args) throws Exception {
+        double limit = Double.parseDouble(System.getProperty("synapse.alloc-limit", "16"));
+
+        OptionsBuilder options = new OptionsBuilder();
+        options.include(VaultReadAllocationBenchmark.class.getName());
+        options.addProfiler(GCProfiler.class);
+        Collection<RunResult> results = new Runner(options.build()).run();
+
+        boolean failed = false;
+        for (RunResult result : results) {
+            for (Map.Entry<String, Result> secondary : result.getSecondaryResults().entrySet()) {
+                // the profiler prefixes its result names, e.g. "·gc.alloc.rate.norm"
+                if (!secondary.getKey().endsWith(ALLOC_RATE_NORM)) {
+                    continue;
+                }
+
+                double allocated = secondary.getValue().getScore();
+                if (allocated > limit) {
+                    System.err.println(result.getParams().getBenchmark() + " (decisionCache=" + result.getParams().getParam("decisionCache") +
+                            ") allocated " + allocated + " bytes/op, over the limit of " + limit);
+                    failed = true;
+                }
+            }
+        }
+
+        if (failed) {
+            System.exit(1);
+        }
+    }
+}
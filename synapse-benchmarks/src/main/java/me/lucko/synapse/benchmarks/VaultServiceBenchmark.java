@@ -0,0 +1,108 @@
+/*
+ * This file is part of synapse, licensed under the MIT License.
+ *
+ *  Copyright (c) lucko (Luck) <luck@lucko.me>
+ *  Copyright (c) contributors
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package me.lucko.synapse.benchmarks;
+
+import me.lucko.synapse.permission.context.Context;
+import me.lucko.synapse.permission.subject.User;
+import me.lucko.synapse.vault.impl.VaultPermissionService;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the synapse PermissionService implemented over Vault
+ * (synapse-service-vault), backed by in-memory Vault implementations.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class VaultServiceBenchmark {
+    private static final String PLAYER = "Player";
+    private static final String PERMISSION = "example.node.25";
+
+    private UUID uuid;
+    private VaultPermissionService service;
+    private User user;
+    private Set<Context> contexts;
+
+    @Setup
+    public void setup() {
+        StubServer.install();
+
+        uuid = UUID.randomUUID();
+        StubServer.registerPlayer(uuid, PLAYER);
+
+        InMemoryVaultPermission perms = new InMemoryVaultPermission();
+        InMemoryVaultChat chat = new InMemoryVaultChat(perms);
+        perms.playerAddGroup((String) null, PLAYER, "vip");
+        chat.setGroupPrefix((String) null, "vip", "[VIP] ");
+        chat.setPlayerPrefix((String) null, PLAYER, "[Player] ");
+        for (int i = 0; i < 50; i++) {
+            perms.playerAdd((String) null, PLAYER, "example.node." + i);
+            perms.groupAdd((String) null, "vip", "vip.node." + i);
+        }
+
+        service = new VaultPermissionService(perms, chat);
+        user = service.getUser(uuid);
+        contexts = Collections.singleton(service.createContext("world", "world"));
+    }
+
+    @Benchmark
+    public boolean checkPermission() {
+        return user.checkPermission(PERMISSION, contexts);
+    }
+
+    @Benchmark
+    public boolean checkPermissionInherited() {
+        return user.checkPermission("vip.node.25", contexts);
+    }
+
+    @Benchmark
+    public boolean getUserAndCheckPermission() {
+        return service.getUser(uuid).checkPermission(PERMISSION, contexts);
+    }
+
+    @Benchmark
+    public String getPrefix() {
+        return user.getPrefix(contexts);
+    }
+}
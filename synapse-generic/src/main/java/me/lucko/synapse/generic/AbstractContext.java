@@ -34,12 +34,14 @@ import javax.annotation.Nonnull;
 public abstract class AbstractContext implements Context {
     private final String key;
     private final String value;
+    private final int hashCode;
 
     public AbstractContext(String key, String value) {
         Objects.requireNonNull(key, "key is null");
         Objects.requireNonNull(value, "value is null");
         this.key = checkKey(key);
         this.value = checkValue(value);
+        this.hashCode = 31 * this.key.hashCode() + this.value.hashCode();
     }
 
     protected abstract String checkKey(String key);
@@ -60,8 +62,14 @@ public abstract class AbstractContext implements Context {
     public boolean equals(Object obj) {
         if (obj == this) return true;
         if (!(obj instanceof Context)) return false;
+        if (obj instanceof AbstractContext && ((AbstractContext) obj).hashCode != hashCode) return false;
         Context other = (Context) obj;
 
         return key.equals(other.getKey()) && value.equals(other.getValue());
     }
+
+    @Override
+    public int hashCode() {
+        return hashCode;
+    }
 }
@@ -0,0 +1,124 @@
+/*
+ * This file is part of synapse, licensed under the MIT License.
+ *
+ *  Copyright (c) lucko (Luck) <luck@lucko.me>
+ *  Copyright (c) contributors
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package me.lucko.synapse.generic;
+
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
+
+import me.lucko.synapse.permission.context.Context;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiFunction;
+
+import javax.annotation.Nonnull;
+
+/**
+ * Holds a single canonical instance of each context, so equal contexts can
+ * be compared by reference and share memory.
+ *
+ * <p>Canonical instances are only weakly held, so contexts for arbitrary
+ * values are released once they are no longer in use.</p>
+ *
+ * <p>Contexts are looked up by key and value first, so a new context is only
+ * created the first time a key and value are seen.</p>
+ *
+ * @param <C> the context type
+ */
+public class ContextInterner<C extends Context> {
+    private final BiFunction<String, String, C> factory;
+    private final Interner<C> interner = Interners.newWeakInterner();
+    // key -> value -> canonical context
+    private final Map<String, Map<String, ContextReference<C>>> lookup = new ConcurrentHashMap<>();
+    private final ReferenceQueue<C> collected = new ReferenceQueue<>();
+
+    /**
+     * Creates a new interner.
+     *
+     * @param factory the function used to create a context from a key and value
+     */
+    public ContextInterner(BiFunction<String, String, C> factory) {
+        this.factory = factory;
+    }
+
+    /**
+     * Gets the canonical context for the given key and value.
+     *
+     * @param key the key
+     * @param value the value
+     * @return the context
+     */
+    @Nonnull
+    public C intern(@Nonnull String key, @Nonnull String value) {
+        Objects.requireNonNull(key, "key is null");
+        Objects.requireNonNull(value, "value is null");
+
+        Map<String, ContextReference<C>> values = lookup.get(key);
+        if (values != null) {
+            ContextReference<C> ref = values.get(value);
+            if (ref != null) {
+                C context = ref.get();
+                if (context != null) {
+                    return context;
+                }
+            }
+        }
+
+        expunge();
+        C context = interner.intern(factory.apply(key, value));
+        if (values == null) {
+            values = lookup.computeIfAbsent(key, k -> new ConcurrentHashMap<>());
+        }
+        values.put(value, new ContextReference<>(context, key, value, collected));
+        return context;
+    }
+
+    // removes the entries for contexts which have been collected
+    @SuppressWarnings("unchecked")
+    private void expunge() {
+        ContextReference<C> ref;
+        while ((ref = (ContextReference<C>) collected.poll()) != null) {
+            Map<String, ContextReference<C>> values = lookup.get(ref.key);
+            if (values != null) {
+                values.remove(ref.value, ref);
+            }
+        }
+    }
+
+    private static final class ContextReference<C> extends WeakReference<C> {
+        private final String key;
+        private final String value;
+
+        ContextReference(C context, String key, String value, ReferenceQueue<? super C> queue) {
+            super(context, queue);
+            this.key = key;
+            this.value = value;
+        }
+    }
+}
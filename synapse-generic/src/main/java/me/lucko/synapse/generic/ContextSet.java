@@ -0,0 +1,227 @@
+/*
+ * This file is part of synapse, licensed under the MIT License.
+ *
+ *  Copyright (c) lucko (Luck) <luck@lucko.me>
+ *  Copyright (c) contributors
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package me.lucko.synapse.generic;
+
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
+
+import me.lucko.synapse.permission.context.Context;
+
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * An immutable set of {@link Context}s.
+ *
+ * <p>Contexts are held in a sorted array, ordered by key and then value. The
+ * hash code and the value of the "world" context are computed up front, so
+ * services can read the world from a set with a single field access.</p>
+ */
+public final class ContextSet extends AbstractSet<Context> {
+    private static final Comparator<Context> ORDER = Comparator.comparing(Context::getKey).thenComparing(Context::getValue);
+    private static final Context[] NO_CONTEXTS = new Context[0];
+    private static final ContextSet EMPTY = new ContextSet(NO_CONTEXTS);
+    private static final Interner<ContextSet> INTERNER = Interners.newWeakInterner();
+
+    static {
+        EMPTY.canonical = true;
+    }
+
+    public static ContextSet empty() {
+        return EMPTY;
+    }
+
+    /**
+     * Gets the canonical set containing the given contexts.
+     *
+     * <p>Equal sets passed to this method resolve to a single shared
+     * instance, which is held for as long as it is in use.</p>
+     *
+     * @param contexts the contexts
+     * @return the canonical set
+     */
+    public static ContextSet intern(@Nonnull Collection<? extends Context> contexts) {
+        if (contexts instanceof ContextSet && ((ContextSet) contexts).canonical) {
+            return (ContextSet) contexts;
+        }
+        if (contexts.isEmpty()) {
+            return EMPTY;
+        }
+
+        ContextSet set = INTERNER.intern(copyOf(contexts));
+        set.canonical = true;
+        return set;
+    }
+
+    public static ContextSet of(@Nonnull Context context) {
+        return new ContextSet(new Context[]{context});
+    }
+
+    public static ContextSet copyOf(@Nonnull Collection<? extends Context> contexts) {
+        if (contexts instanceof ContextSet) {
+            return (ContextSet) contexts;
+        }
+        if (contexts.isEmpty()) {
+            return EMPTY;
+        }
+
+        Context[] array = contexts.toArray(NO_CONTEXTS);
+        Arrays.sort(array, ORDER);
+
+        // remove duplicates
+        int size = 1;
+        for (int i = 1; i < array.length; i++) {
+            if (ORDER.compare(array[size - 1], array[i]) != 0) {
+                array[size++] = array[i];
+            }
+        }
+        return new ContextSet(size == array.length ? array : Arrays.copyOf(array, size));
+    }
+
+    private final Context[] contexts;
+    private final int hashCode;
+    private final Context world;
+    private final boolean worldOnly;
+    // if this instance is the one held by the interner
+    private volatile boolean canonical = false;
+
+    private ContextSet(Context[] contexts) {
+        this.contexts = contexts;
+
+        int hashCode = 0;
+        Context world = null;
+        int worlds = 0;
+        for (Context context : contexts) {
+            hashCode += context.hashCode();
+            if (context.getKey().equals("world")) {
+                world = context;
+                worlds++;
+            }
+        }
+        this.hashCode = hashCode;
+        this.world = worlds == 1 ? world : null;
+        this.worldOnly = worlds == contexts.length && worlds <= 1;
+    }
+
+    /**
+     * Gets the value of the "world" context in this set.
+     *
+     * @return the world, or null if the set has no world, or more than one
+     */
+    @Nullable
+    public String getWorld() {
+        return world == null ? null : world.getValue();
+    }
+
+    /**
+     * Gets the "world" context in this set, so services can check its type
+     * without iterating the set.
+     *
+     * @return the world context, or null if the set has no world, or more
+     *         than one
+     */
+    @Nullable
+    public Context getWorldContext() {
+        return world;
+    }
+
+    /**
+     * Gets if this set contains nothing but (at most) a single "world"
+     * context.
+     *
+     * @return if the set only has a world
+     */
+    public boolean isWorldOnly() {
+        return worldOnly;
+    }
+
+    @Override
+    public int size() {
+        return contexts.length;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return contexts.length == 0;
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        if (!(o instanceof Context)) {
+            return false;
+        }
+        return Arrays.binarySearch(contexts, (Context) o, ORDER) >= 0;
+    }
+
+    @Nonnull
+    @Override
+    public Iterator<Context> iterator() {
+        return new Iterator<Context>() {
+            private int i = 0;
+
+            @Override
+            public boolean hasNext() {
+                return i < contexts.length;
+            }
+
+            @Override
+            public Context next() {
+                if (i >= contexts.length) {
+                    throw new NoSuchElementException();
+                }
+                return contexts[i++];
+            }
+        };
+    }
+
+    @Nonnull
+    @Override
+    public Object[] toArray() {
+        return contexts.clone();
+    }
+
+    @Override
+    public int hashCode() {
+        return hashCode;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (o == this) return true;
+        if (o instanceof ContextSet) {
+            ContextSet other = (ContextSet) o;
+            return hashCode == other.hashCode && Arrays.equals(contexts, other.contexts);
+        }
+        return super.equals(o);
+    }
+}
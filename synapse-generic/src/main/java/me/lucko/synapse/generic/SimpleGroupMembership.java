@@ -25,8 +25,6 @@
 
 package me.lucko.synapse.generic;
 
-import com.google.common.collect.ImmutableSet;
-
 import me.lucko.synapse.permission.context.Context;
 import me.lucko.synapse.permission.membership.GroupMembership;
 import me.lucko.synapse.permission.node.PermissionNode;
@@ -36,6 +34,14 @@ import java.util.Objects;
 import java.util.Set;
 
 public class SimpleGroupMembership implements GroupMembership {
+    public static SimpleGroupMembership of(Group group) {
+        return new SimpleGroupMembership(group, ContextSet.empty());
+    }
+
+    public static SimpleGroupMembership of(Group group, Set<Context> context) {
+        return new SimpleGroupMembership(group, context);
+    }
+
     private final Group group;
     private final Set<Context> context;
 
@@ -43,7 +49,7 @@ public class SimpleGroupMembership implements GroupMembership {
         Objects.requireNonNull(group, "group is null");
         Objects.requireNonNull(context, "context is null");
         this.group = group;
-        this.context = ImmutableSet.copyOf(context);
+        this.context = ContextSet.intern(context);
     }
 
     @Override
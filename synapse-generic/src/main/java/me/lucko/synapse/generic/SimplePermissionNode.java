@@ -25,8 +25,6 @@
 
 package me.lucko.synapse.generic;
 
-import com.google.common.collect.ImmutableSet;
-
 import me.lucko.synapse.permission.context.Context;
 import me.lucko.synapse.permission.node.PermissionNode;
 
@@ -34,6 +32,14 @@ import java.util.Objects;
 import java.util.Set;
 
 public class SimplePermissionNode implements PermissionNode {
+    public static SimplePermissionNode of(String permission, boolean value) {
+        return new SimplePermissionNode(permission, value, ContextSet.empty());
+    }
+
+    public static SimplePermissionNode of(String permission, boolean value, Set<Context> context) {
+        return new SimplePermissionNode(permission, value, context);
+    }
+
     private final String permission;
     private final boolean value;
     private final Set<Context> context;
@@ -43,7 +49,7 @@ public class SimplePermissionNode implements PermissionNode {
         Objects.requireNonNull(context, "context is null");
         this.permission = permission;
         this.value = value;
-        this.context = ImmutableSet.copyOf(context);
+        this.context = ContextSet.intern(context);
     }
 
     @Override
@@ -0,0 +1,231 @@
+/*
+ * This file is part of synapse, licensed under the MIT License.
+ *
+ *  Copyright (c) lucko (Luck) <luck@lucko.me>
+ *  Copyright (c) contributors
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package me.lucko.synapse.generic.cache;
+
+import com.google.common.collect.ImmutableList;
+
+import me.lucko.synapse.generic.AbstractSubject;
+import me.lucko.synapse.generic.SimpleExpiringGroupMembership;
+import me.lucko.synapse.generic.SimpleGroupMembership;
+import me.lucko.synapse.permission.context.Context;
+import me.lucko.synapse.permission.membership.ExpiringGroupMembership;
+import me.lucko.synapse.permission.membership.GroupMembership;
+import me.lucko.synapse.permission.node.PermissionNode;
+import me.lucko.synapse.permission.options.SetOptions;
+import me.lucko.synapse.permission.options.UnsetOptions;
+import me.lucko.synapse.permission.subject.Group;
+import me.lucko.synapse.permission.subject.MetadataSubject;
+import me.lucko.synapse.permission.subject.PermissionSubject;
+import me.lucko.synapse.util.FutureAction;
+
+import java.util.Collection;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Future;
+import java.util.function.Supplier;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * Wraps a subject, serving reads from a {@link SubjectCache}.
+ *
+ * @param <S> the type of the wrapped subject
+ */
+public abstract class CachedSubject<S extends PermissionSubject & MetadataSubject> extends AbstractSubject {
+    protected final CachingPermissionService service;
+    protected final S delegate;
+    private volatile SubjectCache cache;
+
+    CachedSubject(CachingPermissionService service, S delegate) {
+        super(service);
+        this.service = service;
+        this.delegate = delegate;
+        this.cache = service.newCache();
+    }
+
+    public S getDelegate() {
+        return delegate;
+    }
+
+    /**
+     * Drops all cached lookups for this subject.
+     */
+    public void invalidateCache() {
+        cache = service.newCache();
+    }
+
+    boolean isExpired(long now) {
+        return service.isExpired(cache, now);
+    }
+
+    private SubjectCache cache() {
+        SubjectCache cache = this.cache;
+        if (service.isExpired(cache, System.nanoTime())) {
+            cache = service.newCache();
+            this.cache = cache;
+        }
+        return cache;
+    }
+
+    /**
+     * Called after a write has been made through this subject.
+     */
+    protected abstract void onWrite();
+
+    private FutureAction written(FutureAction action) {
+        onWrite();
+        // the write may be applied asynchronously, so invalidate again once it has been made
+        Future<Void> future = action.asFuture();
+        if (future instanceof CompletableFuture) {
+            ((CompletableFuture<Void>) future).whenComplete((v, t) -> onWrite());
+        }
+        return action;
+    }
+
+    @Nonnull
+    @Override
+    public Collection<PermissionNode> getPermissions() {
+        return delegate.getPermissions();
+    }
+
+    @Nonnull
+    @Override
+    public Collection<GroupMembership> getGroups() {
+        return cache().get(SubjectCache.Kind.GROUPS, SubjectCache.NO_CONTEXTS, null, this::loadGroups);
+    }
+
+    // wraps the groups, so callers reading through a membership hit the cache too
+    private Collection<GroupMembership> loadGroups() {
+        Collection<GroupMembership> memberships = delegate.getGroups();
+        ImmutableList.Builder<GroupMembership> ret = ImmutableList.builder();
+        for (GroupMembership membership : memberships) {
+            Group group = membership.getGroup();
+            Group wrapped = service.wrap(group);
+            if (wrapped == group) {
+                ret.add(membership);
+            } else if (membership instanceof ExpiringGroupMembership) {
+                ret.add(new SimpleExpiringGroupMembership(wrapped, membership.getRequiredContext(), ((ExpiringGroupMembership) membership).getExpiryTime()));
+            } else {
+                ret.add(SimpleGroupMembership.of(wrapped, membership.getRequiredContext()));
+            }
+        }
+        return ret.build();
+    }
+
+    @Override
+    public boolean checkPermission(@Nonnull String permission) {
+        return cache().get(SubjectCache.Kind.PERMISSION, SubjectCache.NO_CONTEXTS, permission, () -> delegate.checkPermission(permission));
+    }
+
+    @Override
+    public boolean checkPermission(@Nonnull String permission, @Nonnull Set<Context> contexts) {
+        return cache().get(SubjectCache.Kind.PERMISSION, SubjectCache.contextKey(contexts), permission, () -> delegate.checkPermission(permission, contexts));
+    }
+
+    @Nullable
+    @Override
+    public String getPrefix() {
+        return cache().get(SubjectCache.Kind.PREFIX, SubjectCache.NO_CONTEXTS, null, delegate::getPrefix);
+    }
+
+    @Nullable
+    @Override
+    public String getPrefix(@Nonnull Set<Context> contexts) {
+        return cache().get(SubjectCache.Kind.PREFIX, SubjectCache.contextKey(contexts), null, () -> delegate.getPrefix(contexts));
+    }
+
+    @Nullable
+    @Override
+    public String getSuffix() {
+        return cache().get(SubjectCache.Kind.SUFFIX, SubjectCache.NO_CONTEXTS, null, delegate::getSuffix);
+    }
+
+    @Nullable
+    @Override
+    public String getSuffix(@Nonnull Set<Context> contexts) {
+        return cache().get(SubjectCache.Kind.SUFFIX, SubjectCache.contextKey(contexts), null, () -> delegate.getSuffix(contexts));
+    }
+
+    @Nullable
+    @Override
+    public String getMetadata(@Nonnull String key) {
+        return cache().get(SubjectCache.Kind.METADATA, SubjectCache.NO_CONTEXTS, key, () -> delegate.getMetadata(key));
+    }
+
+    @Nullable
+    @Override
+    public String getMetadata(@Nonnull String key, @Nonnull Set<Context> contexts) {
+        return cache().get(SubjectCache.Kind.METADATA, SubjectCache.contextKey(contexts), key, () -> delegate.getMetadata(key, contexts));
+    }
+
+    @Nullable
+    Group cachedPrimaryGroup(Object contextKey, Supplier<Group> loader) {
+        return cache().get(SubjectCache.Kind.PRIMARY_GROUP, contextKey, null, () -> service.wrap(loader.get()));
+    }
+
+    @Nonnull
+    @Override
+    public FutureAction setPermission(@Nonnull String permission, @Nonnull SetOptions options) {
+        return written(delegate.setPermission(permission, options));
+    }
+
+    @Nonnull
+    @Override
+    public FutureAction unsetPermission(@Nonnull String permission, @Nonnull UnsetOptions options) {
+        return written(delegate.unsetPermission(permission, options));
+    }
+
+    @Nonnull
+    @Override
+    public FutureAction addGroup(@Nonnull Group group, @Nonnull SetOptions options) {
+        return written(delegate.addGroup(CachingPermissionService.unwrap(group), options));
+    }
+
+    @Nonnull
+    @Override
+    public FutureAction removeGroup(@Nonnull Group group, @Nonnull UnsetOptions options) {
+        return written(delegate.removeGroup(CachingPermissionService.unwrap(group), options));
+    }
+
+    @Nonnull
+    @Override
+    public FutureAction setPrefix(@Nullable String prefix, @Nonnull SetOptions options) {
+        return written(delegate.setPrefix(prefix, options));
+    }
+
+    @Nonnull
+    @Override
+    public FutureAction setSuffix(@Nullable String suffix, @Nonnull SetOptions options) {
+        return written(delegate.setSuffix(suffix, options));
+    }
+
+    @Nonnull
+    @Override
+    public FutureAction setMetadata(@Nonnull String key, @Nullable String value, @Nonnull SetOptions options) {
+        return written(delegate.setMetadata(key, value, options));
+    }
+}
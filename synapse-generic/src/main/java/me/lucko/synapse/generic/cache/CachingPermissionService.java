@@ -0,0 +1,264 @@
+/*
+ * This file is part of synapse, licensed under the MIT License.
+ *
+ *  Copyright (c) lucko (Luck) <luck@lucko.me>
+ *  Copyright (c) contributors
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package me.lucko.synapse.generic.cache;
+
+import com.google.common.collect.ImmutableList;
+
+import me.lucko.synapse.generic.future.CompletableFutureResult;
+import me.lucko.synapse.permission.PermissionService;
+import me.lucko.synapse.permission.context.Context;
+import me.lucko.synapse.permission.options.SetOptions;
+import me.lucko.synapse.permission.options.UnsetOptions;
+import me.lucko.synapse.permission.subject.Group;
+import me.lucko.synapse.permission.subject.User;
+import me.lucko.synapse.util.FutureResult;
+
+import org.bukkit.entity.Player;
+
+import java.util.Collection;
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * A {@link PermissionService} which wraps another, caching the results of
+ * permission checks, prefix, suffix, metadata and group lookups.
+ *
+ * <p>Each user and group returned is wrapped in a {@link CachedUser} or
+ * {@link CachedGroup}, holding a bounded cache which expires after a fixed
+ * time. Writes made through a wrapped subject invalidate its cache straight
+ * away. Changes made directly to the underlying service are only picked up
+ * once the cache expires, or one of the invalidate methods is called.</p>
+ */
+public class CachingPermissionService implements PermissionService {
+    private static final int CLEANUP_THRESHOLD = 1000;
+
+    private final PermissionService delegate;
+    private final int maxEntriesPerSubject;
+    private final long expireAfterNanos;
+
+    private final Map<UUID, CachedUser> users = new ConcurrentHashMap<>();
+    private final Map<String, CachedGroup> groups = new ConcurrentHashMap<>();
+
+    public CachingPermissionService(PermissionService delegate, int maxEntriesPerSubject, long expireAfter, TimeUnit unit) {
+        if (delegate instanceof CachingPermissionService) {
+            throw new IllegalArgumentException("Service is already cached");
+        }
+        this.delegate = delegate;
+        this.maxEntriesPerSubject = maxEntriesPerSubject;
+        this.expireAfterNanos = unit.toNanos(expireAfter);
+    }
+
+    public PermissionService getDelegate() {
+        return delegate;
+    }
+
+    SubjectCache newCache() {
+        return new SubjectCache(maxEntriesPerSubject);
+    }
+
+    boolean isExpired(SubjectCache cache, long now) {
+        return cache.isExpired(now, expireAfterNanos);
+    }
+
+    /**
+     * Drops the cached lookups for the given user.
+     *
+     * @param uniqueId the unique id of the user
+     */
+    public void invalidateUser(UUID uniqueId) {
+        CachedUser user = users.get(uniqueId);
+        if (user != null) {
+            user.invalidateCache();
+        }
+    }
+
+    /**
+     * Drops the cached lookups for the given group, and all users, as they
+     * may inherit from it.
+     *
+     * @param name the name of the group
+     */
+    public void invalidateGroup(String name) {
+        invalidateAll();
+    }
+
+    /**
+     * Drops all cached lookups.
+     */
+    public void invalidateAll() {
+        for (CachedUser user : users.values()) {
+            user.invalidateCache();
+        }
+        for (CachedGroup group : groups.values()) {
+            group.invalidateCache();
+        }
+    }
+
+    /**
+     * Removes wrappers whose caches have expired.
+     */
+    public void cleanup() {
+        long now = System.nanoTime();
+        users.values().removeIf(u -> u.isExpired(now));
+        groups.values().removeIf(g -> g.isExpired(now));
+    }
+
+    /**
+     * Wraps the given user, reusing the existing wrapper if there is one.
+     *
+     * @param user the user
+     * @return the wrapped user
+     */
+    public User wrap(@Nullable User user) {
+        if (user == null || user instanceof CachedUser) {
+            return user;
+        }
+
+        CachedUser cached = users.get(user.getUniqueId());
+        if (cached != null && cached.getDelegate() == user) {
+            return cached;
+        }
+
+        if (users.size() >= CLEANUP_THRESHOLD) {
+            cleanup();
+        }
+        cached = new CachedUser(this, user);
+        users.put(user.getUniqueId(), cached);
+        return cached;
+    }
+
+    /**
+     * Wraps the given group, reusing the existing wrapper if there is one.
+     *
+     * @param group the group
+     * @return the wrapped group
+     */
+    public Group wrap(@Nullable Group group) {
+        if (group == null || group instanceof CachedGroup) {
+            return group;
+        }
+
+        String key = group.getName().toLowerCase(Locale.ROOT);
+        CachedGroup cached = groups.get(key);
+        if (cached != null && cached.getDelegate() == group) {
+            return cached;
+        }
+
+        if (groups.size() >= CLEANUP_THRESHOLD) {
+            cleanup();
+        }
+        cached = new CachedGroup(this, group);
+        groups.put(key, cached);
+        return cached;
+    }
+
+    /**
+     * Gets the group from the underlying service, if the given group is a
+     * wrapper.
+     *
+     * @param group the group
+     * @return the unwrapped group
+     */
+    public static Group unwrap(Group group) {
+        return group instanceof CachedGroup ? ((CachedGroup) group).getDelegate() : group;
+    }
+
+    @Nonnull
+    @Override
+    public String getProviderName() {
+        return delegate.getProviderName();
+    }
+
+    @Nonnull
+    @Override
+    public User getUser(@Nonnull Player player) {
+        return wrap(delegate.getUser(player));
+    }
+
+    @Nullable
+    @Override
+    public User getUser(@Nonnull UUID uniqueId) {
+        return wrap(delegate.getUser(uniqueId));
+    }
+
+    @Nonnull
+    @Override
+    public FutureResult<User> loadUser(@Nonnull UUID uniqueId) {
+        FutureResult<User> result = delegate.loadUser(uniqueId);
+        Future<User> future = result.asFuture();
+        if (future instanceof CompletableFuture) {
+            return new CompletableFutureResult<>(((CompletableFuture<User>) future).thenApply(this::wrap));
+        }
+        return new CompletableFutureResult<>(CompletableFuture.supplyAsync(() -> wrap(result.join())));
+    }
+
+    @Nonnull
+    @Override
+    public Collection<Group> getGroups() {
+        ImmutableList.Builder<Group> ret = ImmutableList.builder();
+        for (Group group : delegate.getGroups()) {
+            ret.add(wrap(group));
+        }
+        return ret.build();
+    }
+
+    @Nullable
+    @Override
+    public Group getGroup(@Nonnull String name) {
+        return wrap(delegate.getGroup(name));
+    }
+
+    @Nonnull
+    @Override
+    public SetOptions getNormalSetOptions() {
+        return delegate.getNormalSetOptions();
+    }
+
+    @Nonnull
+    @Override
+    public UnsetOptions getNormalUnsetOptions() {
+        return delegate.getNormalUnsetOptions();
+    }
+
+    @Override
+    public boolean supportsContextType(@Nonnull String key) {
+        return delegate.supportsContextType(key);
+    }
+
+    @Nonnull
+    @Override
+    public Context createContext(@Nonnull String key, @Nonnull String value) throws IllegalArgumentException {
+        return delegate.createContext(key, value);
+    }
+}
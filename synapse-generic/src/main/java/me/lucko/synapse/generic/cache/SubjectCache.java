@@ -0,0 +1,129 @@
+/*
+ * This file is part of synapse, licensed under the MIT License.
+ *
+ *  Copyright (c) lucko (Luck) <luck@lucko.me>
+ *  Copyright (c) contributors
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package me.lucko.synapse.generic.cache;
+
+import me.lucko.synapse.generic.ContextSet;
+import me.lucko.synapse.permission.context.Context;
+
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * The cached lookups for a single subject.
+ *
+ * <p>A new instance replaces the old one whenever the subject is invalidated
+ * or the entry expires, so nothing needs to be removed from an instance once
+ * it has been added.</p>
+ */
+final class SubjectCache {
+    // the key used for lookups made without any contexts
+    static final Object NO_CONTEXTS = new Object();
+    // stands in for null values, which ConcurrentHashMap can't hold
+    private static final Object NULL = new Object();
+
+    enum Kind {
+        PERMISSION, PREFIX, SUFFIX, METADATA, GROUPS, PRIMARY_GROUP
+    }
+
+    private final long created = System.nanoTime();
+    private final int maxEntries;
+    private final Map<Key, Object> values = new ConcurrentHashMap<>();
+    private final AtomicInteger size = new AtomicInteger();
+
+    SubjectCache(int maxEntries) {
+        this.maxEntries = maxEntries;
+    }
+
+    boolean isExpired(long now, long expireAfterNanos) {
+        return now - created > expireAfterNanos;
+    }
+
+    /**
+     * Gets the key used for lookups made with the given contexts.
+     *
+     * <p>The set itself is used for lookups, as any two equal sets have the
+     * same hash code. It is only copied when a new value is stored, so the
+     * key can't be changed by the caller afterwards.</p>
+     */
+    static Object contextKey(Set<Context> contexts) {
+        return contexts;
+    }
+
+    @SuppressWarnings("unchecked")
+    <T> T get(Kind kind, Object contexts, String name, Supplier<T> loader) {
+        Key key = new Key(kind, contexts, name);
+        Object value = values.get(key);
+        if (value != null) {
+            return value == NULL ? null : (T) value;
+        }
+
+        T loaded = loader.get();
+        if (size.incrementAndGet() > maxEntries) {
+            // over the limit - start again rather than tracking recency
+            values.clear();
+            size.set(1);
+        }
+        if (contexts instanceof Set && !(contexts instanceof ContextSet)) {
+            @SuppressWarnings("unchecked")
+            Set<Context> set = (Set<Context>) contexts;
+            key = new Key(kind, ContextSet.copyOf(set), name);
+        }
+        values.put(key, loaded == null ? NULL : loaded);
+        return loaded;
+    }
+
+    private static final class Key {
+        private final Kind kind;
+        private final Object contexts;
+        private final String name;
+        private final int hashCode;
+
+        Key(Kind kind, Object contexts, String name) {
+            this.kind = kind;
+            this.contexts = contexts;
+            this.name = name;
+            this.hashCode = (kind.hashCode() * 31 + contexts.hashCode()) * 31 + Objects.hashCode(name);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+            Key other = (Key) o;
+            return this.hashCode == other.hashCode && this.kind == other.kind &&
+                    this.contexts.equals(other.contexts) && Objects.equals(this.name, other.name);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+    }
+}
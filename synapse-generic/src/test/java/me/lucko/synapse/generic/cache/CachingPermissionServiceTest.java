@@ -0,0 +1,217 @@
+/*
+ * This file is part of synapse, licensed under the MIT License.
+ *
+ *  Copyright (c) lucko (Luck) <luck@lucko.me>
+ *  Copyright (c) contributors
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package me.lucko.synapse.generic.cache;
+
+import com.google.common.collect.ImmutableSet;
+
+import me.lucko.synapse.generic.ContextSet;
+import me.lucko.synapse.generic.SimpleContext;
+import me.lucko.synapse.generic.SimpleExpiringGroupMembership;
+import me.lucko.synapse.generic.SimpleGroupMembership;
+import me.lucko.synapse.generic.cache.StubPermissionService.StubGroup;
+import me.lucko.synapse.generic.cache.StubPermissionService.StubUser;
+import me.lucko.synapse.permission.context.Context;
+import me.lucko.synapse.permission.membership.ExpiringGroupMembership;
+import me.lucko.synapse.permission.membership.GroupMembership;
+import me.lucko.synapse.permission.subject.Group;
+import me.lucko.synapse.permission.subject.User;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class CachingPermissionServiceTest {
+    private static final UUID UUID_A = UUID.fromString("00000000-0000-0000-0000-00000000000a");
+
+    private StubPermissionService stub;
+    private StubUser stubUser;
+    private StubGroup stubGroup;
+    private CachingPermissionService service;
+
+    @Before
+    public void setUp() {
+        stub = new StubPermissionService();
+        stubUser = stub.createUser(UUID_A);
+        stubGroup = stub.createGroup("vip");
+        stubUser.memberships.add(SimpleGroupMembership.of(stubGroup));
+        service = new CachingPermissionService(stub, 100, 1, TimeUnit.HOURS);
+    }
+
+    private User user() {
+        return service.getUser(UUID_A);
+    }
+
+    @Test
+    public void repeatedReadsHitTheCache() {
+        User user = user();
+        stubUser.permissions.put("a", true);
+
+        assertTrue(user.checkPermission("a"));
+        assertTrue(user.checkPermission("a"));
+        assertTrue(user().checkPermission("a"));
+        assertEquals(1, stub.reads.get());
+
+        assertFalse(user.checkPermission("b"));
+        assertEquals(2, stub.reads.get());
+    }
+
+    @Test
+    public void equalContextSetsShareAnEntry() {
+        User user = user();
+        Set<Context> contexts = new HashSet<>();
+        contexts.add(new SimpleContext("world", "nether"));
+
+        user.checkPermission("a", contexts);
+        user.checkPermission("a", new HashSet<>(contexts));
+        user.checkPermission("a", ContextSet.intern(contexts));
+        assertEquals(1, stub.reads.get());
+
+        // the cache must not hold on to the caller's set
+        contexts.add(new SimpleContext("world", "end"));
+        user.checkPermission("a", ImmutableSet.of(new SimpleContext("world", "nether")));
+        assertEquals(1, stub.reads.get());
+        user.checkPermission("a", contexts);
+        assertEquals(2, stub.reads.get());
+    }
+
+    @Test
+    public void entriesExpire() throws InterruptedException {
+        service = new CachingPermissionService(stub, 100, 1, TimeUnit.MILLISECONDS);
+        User user = user();
+
+        user.checkPermission("a");
+        Thread.sleep(10);
+        stubUser.permissions.put("a", true);
+        assertTrue(user.checkPermission("a"));
+        assertEquals(2, stub.reads.get());
+    }
+
+    @Test
+    public void invalidateUser() {
+        User user = user();
+        assertFalse(user.checkPermission("a"));
+
+        stubUser.permissions.put("a", true);
+        assertFalse(user.checkPermission("a"));
+
+        service.invalidateUser(UUID_A);
+        assertTrue(user.checkPermission("a"));
+    }
+
+    @Test
+    public void invalidateGroup() {
+        User user = user();
+        Group group = service.getGroup("vip");
+        assertNull(user.getPrefix());
+        assertNull(group.getPrefix());
+
+        stubGroup.prefix = "[VIP]";
+        assertNull(user.getPrefix());
+
+        // members inherit from the group, so their lookups go too
+        service.invalidateGroup("vip");
+        assertEquals("[VIP]", user.getPrefix());
+        assertEquals("[VIP]", group.getPrefix());
+    }
+
+    @Test
+    public void writesInvalidateTheSubject() {
+        User user = user();
+        assertFalse(user.checkPermission("a"));
+
+        user.setPermission("a");
+        assertTrue(user.checkPermission("a"));
+
+        user.setMetadata("k", "v");
+        assertEquals("v", user.getMetadata("k"));
+
+        user.unsetPermission("a");
+        assertFalse(user.checkPermission("a"));
+    }
+
+    @Test
+    public void groupWritesInvalidateMembers() {
+        User user = user();
+        Group group = service.getGroup("vip");
+        assertNull(user.getPrefix());
+
+        group.setPrefix("[VIP]");
+        assertEquals("[VIP]", user.getPrefix());
+    }
+
+    @Test
+    public void membershipWritesUnwrapTheGroup() {
+        User user = user();
+        Group staff = service.wrap((Group) stub.createGroup("staff"));
+        assertEquals(1, user.getGroups().size());
+
+        user.addGroup(staff);
+        assertSame(stub.getGroup("staff"), stubUser.memberships.get(1).getGroup());
+        assertEquals(2, user.getGroups().size());
+
+        user.removeGroup(staff);
+        assertEquals(1, user.getGroups().size());
+    }
+
+    @Test
+    public void membershipsAreWrapped() {
+        Set<Context> nether = ContextSet.of(new SimpleContext("world", "nether"));
+        stubUser.memberships.add(new SimpleExpiringGroupMembership(stub.createGroup("staff"), nether, 1234L));
+
+        List<GroupMembership> memberships = new ArrayList<>(user().getGroups());
+        assertEquals(2, memberships.size());
+
+        GroupMembership vip = memberships.get(0);
+        assertTrue(vip.getGroup() instanceof CachedGroup);
+        assertSame(service.getGroup("vip"), vip.getGroup());
+        assertFalse(vip instanceof ExpiringGroupMembership);
+
+        GroupMembership staff = memberships.get(1);
+        assertTrue(staff.getGroup() instanceof CachedGroup);
+        assertSame(service.getGroup("staff"), staff.getGroup());
+        assertTrue(staff instanceof ExpiringGroupMembership);
+        assertEquals(1234L, ((ExpiringGroupMembership) staff).getExpiryTime());
+        assertEquals(nether, staff.getRequiredContext());
+
+        // reads through the membership are cached as well
+        int reads = stub.reads.get();
+        vip.getGroup().getPrefix();
+        vip.getGroup().getPrefix();
+        assertEquals(reads + 1, stub.reads.get());
+    }
+}
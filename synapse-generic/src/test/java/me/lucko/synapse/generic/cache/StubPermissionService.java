@@ -0,0 +1,354 @@
+/*
+ * This file is part of synapse, licensed under the MIT License.
+ *
+ *  Copyright (c) lucko (Luck) <luck@lucko.me>
+ *  Copyright (c) contributors
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package me.lucko.synapse.generic.cache;
+
+import me.lucko.synapse.generic.AbstractSubject;
+import me.lucko.synapse.generic.SimpleContext;
+import me.lucko.synapse.generic.SimpleGroupMembership;
+import me.lucko.synapse.generic.future.CompletedFutureAction;
+import me.lucko.synapse.generic.future.CompletedFutureResult;
+import me.lucko.synapse.permission.PermissionService;
+import me.lucko.synapse.permission.context.Context;
+import me.lucko.synapse.permission.membership.GroupMembership;
+import me.lucko.synapse.permission.node.PermissionNode;
+import me.lucko.synapse.permission.options.SetOptions;
+import me.lucko.synapse.permission.options.UnsetOptions;
+import me.lucko.synapse.permission.subject.Group;
+import me.lucko.synapse.permission.subject.User;
+import me.lucko.synapse.util.FutureAction;
+import me.lucko.synapse.util.FutureResult;
+
+import org.bukkit.entity.Player;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * A minimal in-memory {@link PermissionService} which counts the reads made
+ * against it, so tests can tell cache hits from misses. Contexts are ignored.
+ */
+class StubPermissionService implements PermissionService {
+    private static final SetOptions SET_OPTIONS = options(SetOptions.class);
+    private static final UnsetOptions UNSET_OPTIONS = options(UnsetOptions.class);
+
+    final AtomicInteger reads = new AtomicInteger();
+    private final Map<UUID, StubUser> users = new ConcurrentHashMap<>();
+    private final Map<String, StubGroup> groups = new ConcurrentHashMap<>();
+
+    StubUser createUser(UUID uniqueId) {
+        return users.computeIfAbsent(uniqueId, u -> new StubUser(this, u));
+    }
+
+    StubGroup createGroup(String name) {
+        return groups.computeIfAbsent(name, n -> new StubGroup(this, n));
+    }
+
+    // builder methods return the same options, everything else a default value
+    private static <T> T options(Class<T> type) {
+        return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, (proxy, method, args) -> {
+            Class<?> returnType = method.getReturnType();
+            if (returnType.isInstance(proxy)) {
+                return proxy;
+            }
+            if (returnType == boolean.class) {
+                return false;
+            }
+            if (returnType == int.class) {
+                return System.identityHashCode(proxy);
+            }
+            if (returnType == long.class) {
+                return -1L;
+            }
+            if (returnType == String.class) {
+                return type.getSimpleName();
+            }
+            return null;
+        }));
+    }
+
+    @Nonnull
+    @Override
+    public String getProviderName() {
+        return "stub";
+    }
+
+    @Nonnull
+    @Override
+    public User getUser(@Nonnull Player player) {
+        return createUser(player.getUniqueId());
+    }
+
+    @Nullable
+    @Override
+    public User getUser(@Nonnull UUID uniqueId) {
+        return users.get(uniqueId);
+    }
+
+    @Nonnull
+    @Override
+    public FutureResult<User> loadUser(@Nonnull UUID uniqueId) {
+        return new CompletedFutureResult<>(getUser(uniqueId));
+    }
+
+    @Nonnull
+    @Override
+    public Collection<Group> getGroups() {
+        return new ArrayList<>(groups.values());
+    }
+
+    @Nullable
+    @Override
+    public Group getGroup(@Nonnull String name) {
+        return groups.get(name);
+    }
+
+    @Nonnull
+    @Override
+    public SetOptions getNormalSetOptions() {
+        return SET_OPTIONS;
+    }
+
+    @Nonnull
+    @Override
+    public UnsetOptions getNormalUnsetOptions() {
+        return UNSET_OPTIONS;
+    }
+
+    @Override
+    public boolean supportsContextType(@Nonnull String key) {
+        return key.equals("world");
+    }
+
+    @Nonnull
+    @Override
+    public Context createContext(@Nonnull String key, @Nonnull String value) throws IllegalArgumentException {
+        return new SimpleContext(key, value);
+    }
+
+    abstract static class StubSubject extends AbstractSubject {
+        private final StubPermissionService service;
+        final Map<String, Boolean> permissions = new ConcurrentHashMap<>();
+        final List<GroupMembership> memberships = new CopyOnWriteArrayList<>();
+        final Map<String, String> metadata = new ConcurrentHashMap<>();
+        volatile String prefix = null;
+        volatile String suffix = null;
+
+        StubSubject(StubPermissionService service) {
+            super(service);
+            this.service = service;
+        }
+
+        private void read() {
+            service.reads.incrementAndGet();
+        }
+
+        @Nonnull
+        @Override
+        public Collection<PermissionNode> getPermissions() {
+            read();
+            return Collections.emptyList();
+        }
+
+        @Nonnull
+        @Override
+        public Collection<GroupMembership> getGroups() {
+            read();
+            return new ArrayList<>(memberships);
+        }
+
+        @Override
+        public boolean checkPermission(@Nonnull String permission) {
+            read();
+            return permissions.getOrDefault(permission, false);
+        }
+
+        @Override
+        public boolean checkPermission(@Nonnull String permission, @Nonnull Set<Context> contexts) {
+            return checkPermission(permission);
+        }
+
+        @Nullable
+        @Override
+        public String getPrefix() {
+            read();
+            if (prefix != null) {
+                return prefix;
+            }
+            for (GroupMembership membership : memberships) {
+                String prefix = ((StubSubject) membership.getGroup()).prefix;
+                if (prefix != null) {
+                    return prefix;
+                }
+            }
+            return null;
+        }
+
+        @Nullable
+        @Override
+        public String getPrefix(@Nonnull Set<Context> contexts) {
+            return getPrefix();
+        }
+
+        @Nullable
+        @Override
+        public String getSuffix() {
+            read();
+            return suffix;
+        }
+
+        @Nullable
+        @Override
+        public String getSuffix(@Nonnull Set<Context> contexts) {
+            return getSuffix();
+        }
+
+        @Nullable
+        @Override
+        public String getMetadata(@Nonnull String key) {
+            read();
+            return metadata.get(key);
+        }
+
+        @Nullable
+        @Override
+        public String getMetadata(@Nonnull String key, @Nonnull Set<Context> contexts) {
+            return getMetadata(key);
+        }
+
+        @Nonnull
+        @Override
+        public FutureAction setPermission(@Nonnull String permission, @Nonnull SetOptions options) {
+            permissions.put(permission, true);
+            return CompletedFutureAction.INSTANCE;
+        }
+
+        @Nonnull
+        @Override
+        public FutureAction unsetPermission(@Nonnull String permission, @Nonnull UnsetOptions options) {
+            permissions.remove(permission);
+            return CompletedFutureAction.INSTANCE;
+        }
+
+        @Nonnull
+        @Override
+        public FutureAction addGroup(@Nonnull Group group, @Nonnull SetOptions options) {
+            memberships.add(SimpleGroupMembership.of(group));
+            return CompletedFutureAction.INSTANCE;
+        }
+
+        @Nonnull
+        @Override
+        public FutureAction removeGroup(@Nonnull Group group, @Nonnull UnsetOptions options) {
+            memberships.removeIf(membership -> membership.getGroup() == group);
+            return CompletedFutureAction.INSTANCE;
+        }
+
+        @Nonnull
+        @Override
+        public FutureAction setPrefix(@Nullable String prefix, @Nonnull SetOptions options) {
+            this.prefix = prefix;
+            return CompletedFutureAction.INSTANCE;
+        }
+
+        @Nonnull
+        @Override
+        public FutureAction setSuffix(@Nullable String suffix, @Nonnull SetOptions options) {
+            this.suffix = suffix;
+            return CompletedFutureAction.INSTANCE;
+        }
+
+        @Nonnull
+        @Override
+        public FutureAction setMetadata(@Nonnull String key, @Nullable String value, @Nonnull SetOptions options) {
+            if (value == null) {
+                metadata.remove(key);
+            } else {
+                metadata.put(key, value);
+            }
+            return CompletedFutureAction.INSTANCE;
+        }
+    }
+
+    static final class StubUser extends StubSubject implements User {
+        private final UUID uniqueId;
+
+        StubUser(StubPermissionService service, UUID uniqueId) {
+            super(service);
+            this.uniqueId = uniqueId;
+        }
+
+        @Nonnull
+        @Override
+        public UUID getUniqueId() {
+            return uniqueId;
+        }
+
+        @Nullable
+        @Override
+        public String getUsername() {
+            return null;
+        }
+
+        @Nullable
+        @Override
+        public Group getPrimaryGroup() {
+            return memberships.isEmpty() ? null : memberships.get(0).getGroup();
+        }
+
+        @Nullable
+        @Override
+        public Group getPrimaryGroup(Set<Context> contexts) {
+            return getPrimaryGroup();
+        }
+    }
+
+    static final class StubGroup extends StubSubject implements Group {
+        private final String name;
+
+        StubGroup(StubPermissionService service, String name) {
+            super(service);
+            this.name = name;
+        }
+
+        @Nonnull
+        @Override
+        public String getName() {
+            return name;
+        }
+    }
+}
@@ -0,0 +1,148 @@
+/*
+ * This file is part of synapse, licensed under the MIT License.
+ *
+ *  Copyright (c) lucko (Luck) <luck@lucko.me>
+ *  Copyright (c) contributors
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package me.lucko.synapse.pex;
+
+import me.lucko.synapse.pex.impl.PexPermissionService;
+
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.player.AsyncPlayerPreLoginEvent;
+import org.bukkit.event.player.PlayerJoinEvent;
+import org.bukkit.event.player.PlayerLoginEvent;
+import org.bukkit.event.player.PlayerQuitEvent;
+import org.bukkit.event.world.WorldLoadEvent;
+import org.bukkit.event.world.WorldUnloadEvent;
+
+import ru.tehkode.permissions.PermissionEntity;
+import ru.tehkode.permissions.events.PermissionEntityEvent;
+import ru.tehkode.permissions.events.PermissionSystemEvent;
+
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Keeps the caches in {@link PexPermissionService} in sync with PermissionsEx.
+ */
+public class PexCacheListener implements Listener {
+    private final PexPermissionService service;
+    private final Logger logger;
+
+    public PexCacheListener(PexPermissionService service, Logger logger) {
+        this.service = service;
+        this.logger = logger;
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onPreLogin(AsyncPlayerPreLoginEvent e) {
+        if (e.getLoginResult() != AsyncPlayerPreLoginEvent.Result.ALLOWED) {
+            return;
+        }
+
+        // load the user now, while we're off the main thread, so the lookup
+        // made when they join is served from the cache
+        try {
+            service.loadUser(e.getUniqueId()).asFuture().get(10, TimeUnit.SECONDS);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException | TimeoutException ex) {
+            logger.log(Level.WARNING, "Unable to preload user " + e.getUniqueId() + " (" + e.getName() + ")", ex);
+        }
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onLogin(PlayerLoginEvent e) {
+        // the player won't join, so won't quit either
+        if (e.getResult() != PlayerLoginEvent.Result.ALLOWED) {
+            service.invalidateUser(e.getPlayer().getUniqueId());
+        }
+    }
+
+    @EventHandler(priority = EventPriority.LOWEST)
+    public void onJoin(PlayerJoinEvent e) {
+        service.getUser(e.getPlayer());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onQuit(PlayerQuitEvent e) {
+        // PEX drops the user from its own cache when they quit
+        service.invalidateUser(e.getPlayer().getUniqueId());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onWorldLoad(WorldLoadEvent e) {
+        service.addWorld(e.getWorld().getName());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onWorldUnload(WorldUnloadEvent e) {
+        if (!e.isCancelled()) {
+            service.removeWorld(e.getWorld().getName());
+        }
+    }
+
+    @EventHandler
+    public void onEntityChange(PermissionEntityEvent e) {
+        PermissionEntity entity = e.getEntity();
+        // drop the cached subject if the entity has gone, otherwise just
+        // rebuild its snapshots
+        boolean removed = e.getAction() == PermissionEntityEvent.Action.REMOVED;
+
+        if (entity.getType() == PermissionEntity.Type.GROUP) {
+            if (removed) {
+                service.invalidateGroup(entity.getIdentifier());
+            } else {
+                service.refreshGroup(entity.getIdentifier());
+            }
+            return;
+        }
+
+        UUID uniqueId;
+        try {
+            uniqueId = UUID.fromString(entity.getIdentifier());
+        } catch (IllegalArgumentException ex) {
+            // user is identified by name
+            return;
+        }
+
+        if (removed) {
+            service.invalidateUser(uniqueId);
+        } else {
+            service.refreshUser(uniqueId);
+        }
+    }
+
+    @EventHandler
+    public void onSystemChange(PermissionSystemEvent e) {
+        if (e.getAction() != PermissionSystemEvent.Action.DEBUGMODE_TOGGLE) {
+            service.invalidateAll();
+        }
+    }
+}
@@ -25,15 +25,64 @@
 
 package me.lucko.synapse.pex;
 
+import me.lucko.synapse.permission.PermissionService;
+import me.lucko.synapse.pex.impl.PermissionMatcherMode;
+import me.lucko.synapse.pex.impl.PexPermissionService;
+import me.lucko.synapse.pex.impl.PexSaveQueue;
+
+import org.bukkit.World;
+import org.bukkit.plugin.ServicePriority;
 import org.bukkit.plugin.java.JavaPlugin;
 
+import ru.tehkode.permissions.bukkit.PermissionsEx;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
 /**
  * Uses PermissionsEx to implement the synapse PermissionService
  */
 public class SynapsePexPlugin extends JavaPlugin {
 
+    private PexSaveQueue saveQueue;
+    private PexPermissionService service;
+
     @Override
     public void onEnable() {
+        saveDefaultConfig();
+
+        PermissionMatcherMode matcherMode;
+        try {
+            matcherMode = PermissionMatcherMode.valueOf(getConfig().getString("permission-matcher", "off").toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            getLogger().warning("Unknown permission-matcher mode: " + getConfig().getString("permission-matcher"));
+            matcherMode = PermissionMatcherMode.OFF;
+        }
 
+        // entities are modified on the server thread, so save them there too
+        saveQueue = new PexSaveQueue(getConfig().getLong("save-window", 50), TimeUnit.MILLISECONDS, r -> getServer().getScheduler().runTask(this, r), getLogger());
+        int loadThreads = Math.max(1, getConfig().getInt("load-threads", 2));
+        service = new PexPermissionService(PermissionsEx.getPermissionManager(), matcherMode, saveQueue, loadThreads, getLogger());
+        for (World world : getServer().getWorlds()) {
+            service.addWorld(world.getName());
+        }
+        service.populate();
+        getServer().getScheduler().runTaskTimer(this, service.getExpiryManager()::tick, 20L, 20L);
+
+        getServer().getPluginManager().registerEvents(new PexCacheListener(service, getLogger()), this);
+        getServer().getServicesManager().register(PermissionService.class, service, this, ServicePriority.Normal);
+    }
+
+    @Override
+    public void onDisable() {
+        if (service != null) {
+            getServer().getServicesManager().unregister(PermissionService.class, service);
+            service.shutdown();
+            service = null;
+        }
+        if (saveQueue != null) {
+            saveQueue.shutdown();
+            saveQueue = null;
+        }
     }
 }
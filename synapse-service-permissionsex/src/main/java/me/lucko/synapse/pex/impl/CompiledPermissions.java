@@ -0,0 +1,269 @@
+/*
+ * This file is part of synapse, licensed under the MIT License.
+ *
+ *  Copyright (c) lucko (Luck) <luck@lucko.me>
+ *  Copyright (c) contributors
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package me.lucko.synapse.pex.impl;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+import javax.annotation.Nullable;
+
+/**
+ * A compiled form of a PermissionsEx permission list, which can be checked
+ * without going through PEX's regex matcher.
+ *
+ * <p>PEX checks a permission by testing each expression in the list in turn
+ * (with '.' taken literally, '*' matching anything, and case ignored), and
+ * using the first which matches. Here, exact expressions are held in a map,
+ * expressions ending in a single '*' are held in a prefix trie, and any
+ * other wildcards are held in a list. The result is the match with the
+ * lowest index in the original list.</p>
+ *
+ * <p>Lists containing anything else PEX interprets as a regex, including
+ * numeric ranges such as {@code kit.tier.1-3}, or characters outside of
+ * US-ASCII (which PEX's case-insensitive matching treats differently),
+ * cannot be compiled.</p>
+ */
+final class CompiledPermissions {
+    private static final int NO_MATCH = Integer.MAX_VALUE;
+    private static final String REGEX_CHARS = "\\^$|?+()[]{}";
+
+    /**
+     * Compiles a permission list.
+     *
+     * @param expressions the list, as returned by PermissionEntity#getPermissions(String)
+     * @return the compiled list, or null if the list cannot be compiled
+     */
+    @Nullable
+    static CompiledPermissions compile(List<String> expressions) {
+        boolean[] values = new boolean[expressions.size()];
+        Map<String, Integer> exact = new HashMap<>();
+        TrieBuilder prefixes = new TrieBuilder();
+        List<Glob> globs = new ArrayList<>();
+
+        int index = 0;
+        for (String expression : expressions) {
+            int i = index++;
+            values[i] = !expression.startsWith("-");
+
+            String pattern = expression;
+            if (pattern.startsWith("-")) {
+                pattern = pattern.substring(1);
+            }
+            if (pattern.startsWith("#")) {
+                pattern = pattern.substring(1);
+            }
+            if (!isSupported(pattern)) {
+                return null;
+            }
+            pattern = pattern.toLowerCase(Locale.ROOT);
+
+            int star = pattern.indexOf('*');
+            if (star == -1) {
+                exact.putIfAbsent(pattern, i);
+            } else if (star == pattern.length() - 1) {
+                prefixes.add(pattern.substring(0, star), i);
+            } else {
+                globs.add(new Glob(pattern, i));
+            }
+        }
+
+        return new CompiledPermissions(values, exact, prefixes.build(), globs.toArray(new Glob[0]));
+    }
+
+    private static boolean isSupported(String s) {
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c > 127 || REGEX_CHARS.indexOf(c) != -1) {
+                return false;
+            }
+            // PEX expands digit ranges (\d+-\d+) into alternations
+            if (c == '-' && i > 0 && i < s.length() - 1 && isDigit(s.charAt(i - 1)) && isDigit(s.charAt(i + 1))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private static boolean isAscii(String s) {
+        for (int i = 0; i < s.length(); i++) {
+            if (s.charAt(i) > 127) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private final boolean[] values;
+    private final Map<String, Integer> exact;
+    private final Node prefixes;
+    private final Glob[] globs;
+
+    private CompiledPermissions(boolean[] values, Map<String, Integer> exact, Node prefixes, Glob[] globs) {
+        this.values = values;
+        this.exact = exact;
+        this.prefixes = prefixes;
+        this.globs = globs;
+    }
+
+    /**
+     * Checks a permission.
+     *
+     * @param permission the permission
+     * @return the result, or null if the permission cannot be checked
+     *         using the compiled form
+     */
+    @Nullable
+    Boolean check(String permission) {
+        if (!isAscii(permission)) {
+            return null;
+        }
+        String node = permission.toLowerCase(Locale.ROOT);
+
+        int match = NO_MATCH;
+
+        Integer exactMatch = exact.get(node);
+        if (exactMatch != null) {
+            match = exactMatch;
+        }
+
+        Node current = prefixes;
+        for (int i = 0; current != null; i++) {
+            if (current.index < match) {
+                match = current.index;
+            }
+            if (i == node.length()) {
+                break;
+            }
+            current = current.child(node.charAt(i));
+        }
+
+        for (Glob glob : globs) {
+            if (glob.index >= match) {
+                // globs are in list order
+                break;
+            }
+            if (glob.matches(node)) {
+                match = glob.index;
+                break;
+            }
+        }
+
+        return match != NO_MATCH && values[match];
+    }
+
+    private static final class Node {
+        private final char[] keys;
+        private final Node[] children;
+        // the lowest index of a prefix expression ending here
+        private final int index;
+
+        Node(char[] keys, Node[] children, int index) {
+            this.keys = keys;
+            this.children = children;
+            this.index = index;
+        }
+
+        Node child(char c) {
+            int i = Arrays.binarySearch(keys, c);
+            return i < 0 ? null : children[i];
+        }
+    }
+
+    private static final class TrieBuilder {
+        private final TreeMap<Character, TrieBuilder> children = new TreeMap<>();
+        private int index = NO_MATCH;
+
+        void add(String prefix, int index) {
+            TrieBuilder current = this;
+            for (int i = 0; i < prefix.length(); i++) {
+                current = current.children.computeIfAbsent(prefix.charAt(i), c -> new TrieBuilder());
+            }
+            if (index < current.index) {
+                current.index = index;
+            }
+        }
+
+        Node build() {
+            char[] keys = new char[children.size()];
+            Node[] nodes = new Node[children.size()];
+            int i = 0;
+            for (Map.Entry<Character, TrieBuilder> child : children.entrySet()) {
+                keys[i] = child.getKey();
+                nodes[i] = child.getValue().build();
+                i++;
+            }
+            return new Node(keys, nodes, index);
+        }
+    }
+
+    private static final class Glob {
+        private final String pattern;
+        private final int index;
+
+        Glob(String pattern, int index) {
+            this.pattern = pattern;
+            this.index = index;
+        }
+
+        /**
+         * Matches the whole of the node against the pattern, where '*'
+         * matches any sequence of characters.
+         */
+        boolean matches(String node) {
+            int p = 0;
+            int n = 0;
+            int star = -1;
+            int backtrack = 0;
+            while (n < node.length()) {
+                if (p < pattern.length() && pattern.charAt(p) == '*') {
+                    star = p++;
+                    backtrack = n;
+                } else if (p < pattern.length() && pattern.charAt(p) == node.charAt(n)) {
+                    p++;
+                    n++;
+                } else if (star != -1) {
+                    p = star + 1;
+                    n = ++backtrack;
+                } else {
+                    return false;
+                }
+            }
+            while (p < pattern.length() && pattern.charAt(p) == '*') {
+                p++;
+            }
+            return p == pattern.length();
+        }
+    }
+}
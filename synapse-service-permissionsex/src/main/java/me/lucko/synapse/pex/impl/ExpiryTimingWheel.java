@@ -0,0 +1,190 @@
+/*
+ * This file is part of synapse, licensed under the MIT License.
+ *
+ *  Copyright (c) lucko (Luck) <luck@lucko.me>
+ *  Copyright (c) contributors
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package me.lucko.synapse.pex.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A hierarchical timing wheel, used to track when things expire.
+ *
+ * <p>Time is divided into ticks. The wheel has several levels of 64 slots,
+ * each level covering 64 times the span of the one below it. Entries are
+ * placed in the coarsest level which can still tell them apart from the
+ * current tick, and move down a level each time the wheel reaches the slot
+ * they are in. Scheduling, cancelling and expiring an entry are all O(1),
+ * regardless of how many entries are held.</p>
+ *
+ * @param <T> the value type
+ */
+final class ExpiryTimingWheel<T> {
+    private static final int SLOT_BITS = 6;
+    private static final int SLOTS = 1 << SLOT_BITS;
+    private static final int SLOT_MASK = SLOTS - 1;
+    private static final int LEVELS = 5;
+    // the furthest ahead an entry can be placed, in ticks
+    private static final long MAX_DELTA = (1L << (SLOT_BITS * LEVELS)) - 1;
+
+    private final long tickMillis;
+    private final Entry<T>[][] wheels;
+    private long currentTick;
+    private int size = 0;
+
+    @SuppressWarnings("unchecked")
+    ExpiryTimingWheel(long tickMillis, long nowMillis) {
+        this.tickMillis = tickMillis;
+        this.currentTick = nowMillis / tickMillis;
+        this.wheels = new Entry[LEVELS][SLOTS];
+        for (int level = 0; level < LEVELS; level++) {
+            for (int slot = 0; slot < SLOTS; slot++) {
+                // each slot is a circular list with a sentinel head
+                Entry<T> head = new Entry<>(0, null);
+                head.prev = head;
+                head.next = head;
+                this.wheels[level][slot] = head;
+            }
+        }
+    }
+
+    /**
+     * Schedules a value to expire at the given time.
+     *
+     * @param expiryMillis the expiry time, in epoch milliseconds
+     * @param value the value
+     * @return the entry, which can be passed to {@link #cancel(Entry)}
+     */
+    synchronized Entry<T> schedule(long expiryMillis, T value) {
+        // round up, so entries never expire early
+        Entry<T> entry = new Entry<>((expiryMillis + tickMillis - 1) / tickMillis, value);
+        place(entry, null);
+        size++;
+        return entry;
+    }
+
+    synchronized void cancel(Entry<T> entry) {
+        if (entry.prev != null) {
+            entry.unlink();
+            size--;
+        }
+    }
+
+    /**
+     * Advances the wheel to the given time.
+     *
+     * @param nowMillis the current time, in epoch milliseconds
+     * @return the values which have expired
+     */
+    synchronized List<T> advance(long nowMillis) {
+        long targetTick = nowMillis / tickMillis;
+        List<T> expired = new ArrayList<>();
+        List<Entry<T>> due = new ArrayList<>();
+
+        while (currentTick < targetTick) {
+            currentTick++;
+
+            // find the highest level whose slot boundary has been crossed,
+            // then move entries down, starting from the top
+            int level = 1;
+            while (level < LEVELS && (currentTick & ((1L << (SLOT_BITS * level)) - 1)) == 0) {
+                level++;
+            }
+            for (int l = level - 1; l >= 1; l--) {
+                Entry<T> head = wheels[l][(int) (currentTick >>> (SLOT_BITS * l)) & SLOT_MASK];
+                while (head.next != head) {
+                    Entry<T> entry = head.next;
+                    entry.unlink();
+                    place(entry, due);
+                }
+            }
+
+            Entry<T> head = wheels[0][(int) currentTick & SLOT_MASK];
+            while (head.next != head) {
+                Entry<T> entry = head.next;
+                entry.unlink();
+                due.add(entry);
+            }
+        }
+
+        for (Entry<T> entry : due) {
+            expired.add(entry.value);
+        }
+        size -= due.size();
+        return expired;
+    }
+
+    synchronized int size() {
+        return size;
+    }
+
+    private void place(Entry<T> entry, List<Entry<T>> due) {
+        long delta = entry.tick - currentTick;
+        if (delta <= 0) {
+            if (due != null) {
+                due.add(entry);
+                return;
+            }
+            delta = 1;
+        }
+        delta = Math.min(delta, MAX_DELTA);
+        long tick = currentTick + delta;
+
+        int level = 0;
+        while (level < LEVELS - 1 && delta >= (1L << (SLOT_BITS * (level + 1)))) {
+            level++;
+        }
+        entry.linkBefore(wheels[level][(int) (tick >>> (SLOT_BITS * level)) & SLOT_MASK]);
+    }
+
+    static final class Entry<T> {
+        private final long tick;
+        private final T value;
+        private Entry<T> prev;
+        private Entry<T> next;
+
+        private Entry(long tick, T value) {
+            this.tick = tick;
+            this.value = value;
+        }
+
+        T getValue() {
+            return value;
+        }
+
+        private void linkBefore(Entry<T> head) {
+            this.prev = head.prev;
+            this.next = head;
+            head.prev.next = this;
+            head.prev = this;
+        }
+
+        private void unlink() {
+            prev.next = next;
+            next.prev = prev;
+            prev = null;
+            next = null;
+        }
+    }
+}
@@ -0,0 +1,162 @@
+/*
+ * This file is part of synapse, licensed under the MIT License.
+ *
+ *  Copyright (c) lucko (Luck) <luck@lucko.me>
+ *  Copyright (c) contributors
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package me.lucko.synapse.pex.impl;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Objects;
+
+/**
+ * A record of a temporary permission, group membership, prefix, suffix or
+ * metadata value.
+ *
+ * <p>PermissionsEx has no notion of expiry, so these are stored alongside
+ * the entity in the {@link #OPTION} option, one option per world.</p>
+ */
+final class PexExpiry {
+    static final String OPTION = "synapse-expiring";
+
+    enum Type {
+        PERMISSION('p'), GROUP('g'), PREFIX('x'), SUFFIX('s'), METADATA('m');
+
+        private final char code;
+
+        Type(char code) {
+            this.code = code;
+        }
+
+        static Type fromCode(char code) {
+            for (Type type : values()) {
+                if (type.code == code) {
+                    return type;
+                }
+            }
+            return null;
+        }
+    }
+
+    private final Type type;
+    private final String world;
+    private final String name;
+    private final long expiryTime;
+
+    PexExpiry(Type type, String world, String name, long expiryTime) {
+        this.type = type;
+        this.world = world;
+        this.name = name;
+        this.expiryTime = expiryTime;
+    }
+
+    Type getType() {
+        return type;
+    }
+
+    String getWorld() {
+        return world;
+    }
+
+    String getName() {
+        return name;
+    }
+
+    long getExpiryTime() {
+        return expiryTime;
+    }
+
+    /**
+     * Gets if this record is for the given permission or group.
+     */
+    boolean matches(Type type, String name) {
+        return this.type == type && (type == Type.GROUP ? this.name.equalsIgnoreCase(name) : this.name.equals(name));
+    }
+
+    /**
+     * Gets a key identifying the permission or group this record is for,
+     * ignoring the expiry time.
+     */
+    String key() {
+        return type.code + ":" + world + ":" + (type == Type.GROUP ? name.toLowerCase(Locale.ROOT) : name);
+    }
+
+    /**
+     * Parses the value of the {@link #OPTION} option.
+     *
+     * @param value the value, may be null
+     * @param world the world the option was set in
+     * @return the records
+     */
+    static List<PexExpiry> parse(String value, String world) {
+        if (value == null || value.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        List<PexExpiry> ret = new ArrayList<>();
+        for (String entry : value.split(";")) {
+            // <expiry time>:<type>:<name>
+            int first = entry.indexOf(':');
+            if (first == -1 || entry.length() < first + 4 || entry.charAt(first + 2) != ':') {
+                continue;
+            }
+            Type type = Type.fromCode(entry.charAt(first + 1));
+            if (type == null) {
+                continue;
+            }
+            try {
+                ret.add(new PexExpiry(type, world, entry.substring(first + 3), Long.parseLong(entry.substring(0, first))));
+            } catch (NumberFormatException e) {
+                // ignore
+            }
+        }
+        return ret;
+    }
+
+    static String serialize(List<PexExpiry> expiries) {
+        StringBuilder sb = new StringBuilder();
+        for (PexExpiry expiry : expiries) {
+            if (sb.length() != 0) {
+                sb.append(';');
+            }
+            sb.append(expiry.expiryTime).append(':').append(expiry.type.code).append(':').append(expiry.name);
+        }
+        return sb.toString();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof PexExpiry)) return false;
+        PexExpiry other = (PexExpiry) o;
+        return this.expiryTime == other.expiryTime && this.type == other.type &&
+                Objects.equals(this.world, other.world) && this.name.equals(other.name);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(type, world, name, expiryTime);
+    }
+}
@@ -0,0 +1,152 @@
+/*
+ * This file is part of synapse, licensed under the MIT License.
+ *
+ *  Copyright (c) lucko (Luck) <luck@lucko.me>
+ *  Copyright (c) contributors
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package me.lucko.synapse.pex.impl;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Removes temporary permissions, group memberships, prefixes, suffixes and
+ * metadata once they expire.
+ *
+ * <p>Expiry times are held in an {@link ExpiryTimingWheel} with a one second
+ * tick, so the cost of each {@link #tick()} does not depend on how many
+ * temporary grants exist.</p>
+ *
+ * <p>Only subjects which are loaded into the service's cache are scheduled:
+ * all groups, and users once they are looked up or log in. Grants held by
+ * users who stay offline are not removed from storage until the user is
+ * next loaded, at which point any which have already passed are removed on
+ * the next tick.</p>
+ */
+public class PexExpiryManager {
+    private static final long TICK_MILLIS = TimeUnit.SECONDS.toMillis(1);
+
+    private final PexPermissionService service;
+    private final ExpiryTimingWheel<Scheduled> wheel = new ExpiryTimingWheel<>(TICK_MILLIS, System.currentTimeMillis());
+    // the wheel entry for each subject + record key, so rescheduling replaces the previous entry
+    private final Map<String, ExpiryTimingWheel.Entry<Scheduled>> entries = new HashMap<>();
+
+    PexExpiryManager(PexPermissionService service) {
+        this.service = service;
+    }
+
+    /**
+     * Gets the number of temporary grants waiting to expire.
+     *
+     * @return the number of grants
+     */
+    public int getPending() {
+        return wheel.size();
+    }
+
+    /**
+     * Schedules the stored expiry records for the given subject.
+     *
+     * @param subject the subject
+     */
+    void load(PexSubject subject) {
+        for (PexExpiry expiry : subject.getAllExpiries()) {
+            schedule(subject, expiry);
+        }
+    }
+
+    void schedule(PexSubject subject, PexExpiry expiry) {
+        Scheduled scheduled = new Scheduled(subject, expiry);
+        synchronized (entries) {
+            ExpiryTimingWheel.Entry<Scheduled> previous = entries.put(scheduled.key, wheel.schedule(expiry.getExpiryTime(), scheduled));
+            if (previous != null) {
+                wheel.cancel(previous);
+            }
+        }
+    }
+
+    void cancel(PexSubject subject, PexExpiry expiry) {
+        String key = subjectKey(subject) + expiry.key();
+        synchronized (entries) {
+            ExpiryTimingWheel.Entry<Scheduled> previous = entries.remove(key);
+            if (previous != null) {
+                wheel.cancel(previous);
+            }
+        }
+    }
+
+    /**
+     * Removes any grants which have expired. Must be called on the server
+     * thread.
+     */
+    public void tick() {
+        List<Scheduled> due = wheel.advance(System.currentTimeMillis());
+        for (Scheduled scheduled : due) {
+            synchronized (entries) {
+                ExpiryTimingWheel.Entry<Scheduled> entry = entries.get(scheduled.key);
+                if (entry != null && entry.getValue() == scheduled) {
+                    entries.remove(scheduled.key);
+                }
+            }
+
+            // the subject may have been reloaded since the grant was scheduled
+            PexSubject subject = scheduled.resolve(service);
+            if (subject != null) {
+                subject.expire(scheduled.expiry);
+            }
+        }
+    }
+
+    private static String subjectKey(PexSubject subject) {
+        if (subject instanceof PexUser) {
+            return "u:" + ((PexUser) subject).getUniqueId() + "/";
+        } else {
+            return "g:" + ((PexGroup) subject).getName().toLowerCase(Locale.ROOT) + "/";
+        }
+    }
+
+    private static final class Scheduled {
+        private final String key;
+        private final UUID user;
+        private final String group;
+        private final PexExpiry expiry;
+
+        Scheduled(PexSubject subject, PexExpiry expiry) {
+            this.key = subjectKey(subject) + expiry.key();
+            this.user = subject instanceof PexUser ? ((PexUser) subject).getUniqueId() : null;
+            this.group = subject instanceof PexGroup ? ((PexGroup) subject).getName() : null;
+            this.expiry = expiry;
+        }
+
+        PexSubject resolve(PexPermissionService service) {
+            if (user != null) {
+                return (PexSubject) service.getUser(user);
+            } else {
+                return (PexSubject) service.getGroup(group);
+            }
+        }
+    }
+}
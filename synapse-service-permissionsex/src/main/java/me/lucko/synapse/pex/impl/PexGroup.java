@@ -39,6 +39,10 @@ public class PexGroup extends PexSubject implements Group {
         this.group = group;
     }
 
+    public PermissionGroup getHandle() {
+        return group;
+    }
+
     @Nonnull
     @Override
     public String getName() {
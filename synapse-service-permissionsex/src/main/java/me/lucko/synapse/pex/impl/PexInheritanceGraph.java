@@ -0,0 +1,188 @@
+/*
+ * This file is part of synapse, licensed under the MIT License.
+ *
+ *  Copyright (c) lucko (Luck) <luck@lucko.me>
+ *  Copyright (c) contributors
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package me.lucko.synapse.pex.impl;
+
+import ru.tehkode.permissions.PermissionEntity;
+import ru.tehkode.permissions.PermissionGroup;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The group inheritance graph, flattened into an ordered ancestor list for
+ * each group and world.
+ *
+ * <p>Ancestors are listed in the order PermissionsEx consults them: each
+ * direct parent, followed by that parent's own ancestors, skipping any
+ * group which has already been listed. Lists are built lazily, reusing the
+ * lists of the parent groups, and when a group changes only the lists of
+ * that group and the groups which inherit from it are dropped.</p>
+ */
+final class PexInheritanceGraph {
+    private static final PermissionGroup[] EMPTY = new PermissionGroup[0];
+    // ConcurrentHashMap does not allow null keys
+    private static final String GLOBAL = "\0";
+
+    // group name -> world -> ancestors
+    private final Map<String, Map<String, PermissionGroup[]>> ancestors = new ConcurrentHashMap<>();
+    // group name -> names of the groups which have it as a direct parent
+    private final Map<String, Set<String>> children = new ConcurrentHashMap<>();
+    // incremented on each invalidation, so lists built from older data aren't kept
+    private final AtomicLong generation = new AtomicLong();
+
+    /**
+     * Gets the ancestors of the given group in a world.
+     *
+     * @param group the group
+     * @param world the world, or null for global
+     * @return the ancestors, nearest first. The array must not be modified.
+     */
+    PermissionGroup[] getAncestors(PermissionGroup group, String world) {
+        return getAncestors(group, world, new Walk(generation.get()));
+    }
+
+    /**
+     * Gets the ancestors of the given entity in a world, built from the
+     * cached lists of its parents.
+     *
+     * @param entity the entity
+     * @param world the world, or null for global
+     * @return the ancestors, nearest first
+     */
+    PermissionGroup[] merge(PermissionEntity entity, String world) {
+        return merge(entity, world, new Walk(generation.get()));
+    }
+
+    private PermissionGroup[] getAncestors(PermissionGroup group, String world, Walk walk) {
+        String name = group.getName().toLowerCase(Locale.ROOT);
+        Map<String, PermissionGroup[]> worlds = ancestors.computeIfAbsent(name, n -> new ConcurrentHashMap<>());
+        String worldKey = world == null ? GLOBAL : world;
+
+        PermissionGroup[] ret = worlds.get(worldKey);
+        if (ret != null) {
+            return ret;
+        }
+
+        boolean root = walk.visiting.isEmpty();
+        if (!walk.visiting.add(name)) {
+            // inheritance cycle, stop here
+            walk.cycle = true;
+            return EMPTY;
+        }
+        boolean cycle = walk.cycle;
+        walk.cycle = false;
+        ret = merge(group, world, walk);
+        walk.visiting.remove(name);
+
+        // the list depends on where the cycle was entered, so only the
+        // list of the group the walk started from is complete
+        boolean complete = root || !walk.cycle;
+        walk.cycle |= cycle;
+        if (complete) {
+            worlds.put(worldKey, ret);
+            if (generation.get() != walk.generation) {
+                // invalidated while this list was being built
+                worlds.remove(worldKey, ret);
+            }
+        }
+        return ret;
+    }
+
+    private PermissionGroup[] merge(PermissionEntity entity, String world, Walk walk) {
+        List<PermissionGroup> parents = entity.getParents(world);
+        if (parents.isEmpty()) {
+            return EMPTY;
+        }
+
+        boolean group = entity instanceof PermissionGroup;
+        String name = entity.getIdentifier().toLowerCase(Locale.ROOT);
+
+        Map<String, PermissionGroup> ret = new LinkedHashMap<>();
+        for (PermissionGroup parent : parents) {
+            String parentName = parent.getName().toLowerCase(Locale.ROOT);
+            if (group) {
+                children.computeIfAbsent(parentName, n -> ConcurrentHashMap.newKeySet()).add(name);
+            }
+
+            ret.putIfAbsent(parentName, parent);
+            for (PermissionGroup ancestor : getAncestors(parent, world, walk)) {
+                ret.putIfAbsent(ancestor.getName().toLowerCase(Locale.ROOT), ancestor);
+            }
+        }
+        return ret.values().toArray(EMPTY);
+    }
+
+    /**
+     * Drops the ancestor lists of the given group and all of its descendants.
+     *
+     * @param name the name of the group which changed
+     */
+    void invalidate(String name) {
+        generation.incrementAndGet();
+        Set<String> seen = new HashSet<>();
+        Deque<String> queue = new ArrayDeque<>();
+        queue.add(name.toLowerCase(Locale.ROOT));
+
+        while (!queue.isEmpty()) {
+            String group = queue.poll();
+            if (!seen.add(group)) {
+                continue;
+            }
+            ancestors.remove(group);
+
+            // the edges are recorded again when the child is rebuilt
+            Set<String> descendants = children.remove(group);
+            if (descendants != null) {
+                queue.addAll(descendants);
+            }
+        }
+    }
+
+    void invalidateAll() {
+        generation.incrementAndGet();
+        ancestors.clear();
+        children.clear();
+    }
+
+    private static final class Walk {
+        private final Set<String> visiting = new HashSet<>();
+        private final long generation;
+        // if a cycle was hit while building the current list
+        private boolean cycle = false;
+
+        Walk(long generation) {
+            this.generation = generation;
+        }
+    }
+}
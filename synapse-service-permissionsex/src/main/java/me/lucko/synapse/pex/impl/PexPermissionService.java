@@ -25,6 +25,11 @@
 
 package me.lucko.synapse.pex.impl;
 
+import com.google.common.collect.ImmutableList;
+
+import me.lucko.synapse.generic.ContextSet;
+import me.lucko.synapse.generic.future.CompletableFutureResult;
+import me.lucko.synapse.generic.future.CompletedFutureResult;
 import me.lucko.synapse.permission.PermissionService;
 import me.lucko.synapse.permission.context.Context;
 import me.lucko.synapse.permission.options.SetOptions;
@@ -33,17 +38,209 @@ import me.lucko.synapse.permission.subject.Group;
 import me.lucko.synapse.permission.subject.User;
 import me.lucko.synapse.util.FutureResult;
 
+import org.bukkit.Bukkit;
 import org.bukkit.entity.Player;
 
+import ru.tehkode.permissions.PermissionGroup;
+import ru.tehkode.permissions.PermissionManager;
+import ru.tehkode.permissions.PermissionUser;
+
 import java.util.Collection;
-import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 
 public class PexPermissionService implements PermissionService {
+    private static final int MAX_OFFLINE_USERS = 1000;
+    private static final int MAX_MISSING_GROUPS = 1000;
+
+    private final PermissionManager manager;
+    // users for online players, removed when they quit
+    private final Map<UUID, PexUser> users = new ConcurrentHashMap<>();
+    // users looked up while offline, including those loaded during pre-login,
+    // which are moved to 'users' when they join
+    private final Map<UUID, PexUser> offlineUsers = new ConcurrentHashMap<>();
+    private final Map<String, PexGroup> groups = new ConcurrentHashMap<>();
+    // lowercase names of groups which were looked up but don't exist
+    private final Set<String> missingGroups = ConcurrentHashMap.newKeySet();
+    // loads currently in progress, so concurrent loads of the same user share one backend lookup
+    private final Map<UUID, CompletableFuture<User>> loading = new ConcurrentHashMap<>();
+    private final ThreadPoolExecutor loadExecutor;
+    // the loaded worlds, for which user data is prepared ahead of time
+    private final Set<String> worlds = new CopyOnWriteArraySet<>();
+
+    private final PermissionMatcherMode matcherMode;
+    private final PexSaveQueue saveQueue;
+    private final PexExpiryManager expiryManager;
+    private final PexInheritanceGraph inheritanceGraph = new PexInheritanceGraph();
+    private final Logger logger;
+    // incremented whenever a group changes, as this affects the effective permissions of its members
+    private final AtomicInteger groupGeneration = new AtomicInteger();
+    private final AtomicInteger mismatches = new AtomicInteger();
+
+    public PexPermissionService(PermissionManager manager) {
+        this(manager, PermissionMatcherMode.OFF, new PexSaveQueue(50, TimeUnit.MILLISECONDS, Logger.getLogger(PexSaveQueue.class.getName())), 2, Logger.getLogger(PexPermissionService.class.getName()));
+    }
+
+    public PexPermissionService(PermissionManager manager, PermissionMatcherMode matcherMode, PexSaveQueue saveQueue, int loadThreads, Logger logger) {
+        this.manager = manager;
+        this.matcherMode = matcherMode;
+        this.saveQueue = saveQueue;
+        this.expiryManager = new PexExpiryManager(this);
+        this.logger = logger;
+
+        AtomicInteger counter = new AtomicInteger();
+        // the number of threads is bounded, but loads are queued without
+        // limit so callers never perform the load themselves
+        this.loadExecutor = new ThreadPoolExecutor(loadThreads, loadThreads, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), r -> {
+            Thread thread = new Thread(r, "synapse-pex-loader-" + counter.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.loadExecutor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Stops the executor used to load users.
+     */
+    public void shutdown() {
+        loadExecutor.shutdownNow();
+    }
+
+    public PexSaveQueue getSaveQueue() {
+        return saveQueue;
+    }
+
+    public PexExpiryManager getExpiryManager() {
+        return expiryManager;
+    }
+
+    public PermissionMatcherMode getMatcherMode() {
+        return matcherMode;
+    }
+
+    public void addWorld(String world) {
+        worlds.add(world);
+    }
+
+    public void removeWorld(String world) {
+        worlds.remove(world);
+    }
+
+    Set<String> getWorlds() {
+        return worlds;
+    }
+
+    PexInheritanceGraph getInheritanceGraph() {
+        return inheritanceGraph;
+    }
+
+    int getGroupGeneration() {
+        return groupGeneration.get();
+    }
+
+    void reportMismatch(PexSubject subject, String world, String permission, boolean expected) {
+        int count = mismatches.incrementAndGet();
+        if (count <= 50) {
+            logger.warning("Compiled permission matcher disagreed with PermissionsEx for " + subject.getIdentifier() +
+                    " checking " + permission + " in world " + world + ": PermissionsEx returned " + expected +
+                    (count == 50 ? " (further mismatches will not be logged)" : ""));
+        }
+    }
+
+    public PermissionManager getManager() {
+        return manager;
+    }
+
+    /**
+     * Loads all groups, and users for all online players, into the cache.
+     */
+    public void populate() {
+        for (PermissionGroup group : manager.getGroupList()) {
+            getGroup(group);
+        }
+        for (Player player : Bukkit.getOnlinePlayers()) {
+            getUser(player);
+        }
+    }
+
+    /**
+     * Removes the cached user with the given unique id.
+     *
+     * @param uniqueId the unique id
+     */
+    public void invalidateUser(UUID uniqueId) {
+        users.remove(uniqueId);
+        offlineUsers.remove(uniqueId);
+    }
+
+    /**
+     * Removes the cached group with the given name.
+     *
+     * @param name the name
+     */
+    public void invalidateGroup(String name) {
+        groups.remove(name.toLowerCase(Locale.ROOT));
+        missingGroups.clear();
+        inheritanceGraph.invalidate(name);
+        groupGeneration.incrementAndGet();
+    }
+
+    /**
+     * Marks the cached snapshots for the given user as out of date.
+     *
+     * @param uniqueId the unique id
+     */
+    public void refreshUser(UUID uniqueId) {
+        PexUser user = getCachedUser(uniqueId);
+        if (user != null) {
+            user.invalidateSnapshots();
+            user.reconcileExpiries();
+        }
+    }
+
+    /**
+     * Marks the cached snapshots for the given group as out of date.
+     *
+     * @param name the name
+     */
+    public void refreshGroup(String name) {
+        PexGroup group = groups.get(name.toLowerCase(Locale.ROOT));
+        if (group != null) {
+            group.invalidateSnapshots();
+            group.reconcileExpiries();
+        }
+        // the group may have just been created
+        missingGroups.clear();
+        inheritanceGraph.invalidate(name);
+        groupGeneration.incrementAndGet();
+    }
+
+    /**
+     * Removes all cached users and groups.
+     */
+    public void invalidateAll() {
+        users.clear();
+        offlineUsers.clear();
+        groups.clear();
+        missingGroups.clear();
+        inheritanceGraph.invalidateAll();
+        groupGeneration.incrementAndGet();
+    }
 
     @Nonnull
     @Override
@@ -54,33 +251,168 @@ public class PexPermissionService implements PermissionService {
     @Nonnull
     @Override
     public User getUser(@Nonnull Player player) {
-        return null;
+        UUID uniqueId = player.getUniqueId();
+        PexUser user = users.get(uniqueId);
+        if (user == null) {
+            user = offlineUsers.remove(uniqueId);
+            if (user != null) {
+                PexUser existing = users.putIfAbsent(uniqueId, user);
+                return existing != null ? existing : user;
+            }
+            user = cacheUser(uniqueId, manager.getUser(player));
+        }
+        return user;
     }
 
     @Nullable
     @Override
     public User getUser(@Nonnull UUID uniqueId) {
-        return null;
+        PexUser user = getCachedUser(uniqueId);
+        if (user == null) {
+            PermissionUser pexUser = manager.getUser(uniqueId);
+            if (pexUser == null) {
+                return null;
+            }
+            user = cacheUser(uniqueId, pexUser);
+        }
+        return user;
+    }
+
+    @Nullable
+    private PexUser getCachedUser(UUID uniqueId) {
+        PexUser user = users.get(uniqueId);
+        return user != null ? user : offlineUsers.get(uniqueId);
+    }
+
+    private PexUser cacheUser(UUID uniqueId, PermissionUser pexUser) {
+        PexUser user = new PexUser(this, uniqueId, pexUser);
+        PexUser existing;
+        if (Bukkit.getPlayer(uniqueId) != null) {
+            existing = users.putIfAbsent(uniqueId, user);
+        } else {
+            // nothing removes offline users, so bound them instead
+            if (offlineUsers.size() >= MAX_OFFLINE_USERS) {
+                evictOldestOfflineUser();
+            }
+            existing = offlineUsers.putIfAbsent(uniqueId, user);
+        }
+        if (existing != null) {
+            return existing;
+        }
+        expiryManager.load(user);
+        return user;
+    }
+
+    // only called after a backend lookup, which costs far more than the scan
+    private void evictOldestOfflineUser() {
+        PexUser oldest = null;
+        for (PexUser user : offlineUsers.values()) {
+            if (oldest == null || user.created - oldest.created < 0) {
+                oldest = user;
+            }
+        }
+        if (oldest != null) {
+            offlineUsers.remove(oldest.getUniqueId(), oldest);
+        }
     }
 
     @Nonnull
     @Override
     public FutureResult<User> loadUser(@Nonnull UUID uniqueId) {
-        return null;
+        PexUser user = getCachedUser(uniqueId);
+        if (user != null) {
+            return new CompletedFutureResult<>(user);
+        }
+
+        CompletableFuture<User> future = new CompletableFuture<>();
+        CompletableFuture<User> existing = loading.putIfAbsent(uniqueId, future);
+        if (existing != null) {
+            return new CompletableFutureResult<>(existing);
+        }
+
+        try {
+            loadExecutor.execute(() -> {
+                try {
+                    future.complete(load(uniqueId));
+                } catch (Throwable t) {
+                    future.completeExceptionally(t);
+                } finally {
+                    loading.remove(uniqueId, future);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // the service has been shut down
+            future.completeExceptionally(e);
+            loading.remove(uniqueId, future);
+        }
+        return new CompletableFutureResult<>(future);
+    }
+
+    private PexUser load(UUID uniqueId) {
+        PexUser user = getCachedUser(uniqueId);
+        if (user == null) {
+            PermissionUser pexUser = manager.getUser(uniqueId);
+            if (pexUser == null) {
+                return null;
+            }
+            user = cacheUser(uniqueId, pexUser);
+        }
+        user.warm();
+        return user;
     }
 
     @Nonnull
     @Override
     public Collection<Group> getGroups() {
-        return null;
+        List<PermissionGroup> pexGroups = manager.getGroupList();
+        ImmutableList.Builder<Group> ret = ImmutableList.builder();
+        for (PermissionGroup group : pexGroups) {
+            ret.add(getGroup(group));
+        }
+        return ret.build();
     }
 
     @Nullable
     @Override
     public Group getGroup(@Nonnull String name) {
+        String key = name.toLowerCase(Locale.ROOT);
+        PexGroup group = groups.get(key);
+        if (group != null || missingGroups.contains(key)) {
+            return group;
+        }
+
+        // PermissionManager#getGroup creates groups which don't exist, so
+        // look for the group in the list instead
+        for (PermissionGroup pexGroup : manager.getGroupList()) {
+            if (pexGroup.getName().equalsIgnoreCase(name)) {
+                return getGroup(pexGroup);
+            }
+        }
+
+        // remembered until a group changes
+        if (missingGroups.size() < MAX_MISSING_GROUPS) {
+            missingGroups.add(key);
+        }
         return null;
     }
 
+    /**
+     * Gets the cached group wrapping the given PermissionsEx group.
+     *
+     * @param pexGroup the PermissionsEx group
+     * @return the group
+     */
+    public PexGroup getGroup(PermissionGroup pexGroup) {
+        String key = pexGroup.getName().toLowerCase(Locale.ROOT);
+        PexGroup group = groups.get(key);
+        if (group == null || group.getHandle() != pexGroup) {
+            group = new PexGroup(this, pexGroup);
+            groups.put(key, group);
+            expiryManager.load(group);
+        }
+        return group;
+    }
+
     @Nonnull
     @Override
     public SetOptions getNormalSetOptions() {
@@ -105,10 +437,24 @@ public class PexPermissionService implements PermissionService {
             throw new IllegalArgumentException("Key not supported: " + key);
         }
 
-        return new PexWorldContext(value);
+        return PexWorldContext.of(value);
     }
 
     public static String getWorld(Set<Context> contexts) {
+        if (contexts instanceof ContextSet) {
+            ContextSet set = (ContextSet) contexts;
+            if (set.isWorldOnly()) {
+                Context world = set.getWorldContext();
+                if (world == null) {
+                    return null;
+                }
+                if (world instanceof PexWorldContext) {
+                    return world.getValue();
+                }
+                // otherwise fall through to reject the context below
+            }
+        }
+
         String world = null;
         for (Context context : contexts) {
             if (!(context instanceof PexWorldContext)) {
@@ -122,11 +468,19 @@ public class PexPermissionService implements PermissionService {
         return world;
     }
 
+    /**
+     * Gets the canonical context set for the given world. Only used when
+     * building snapshots, so the sets are shared through the (weak) interner
+     * rather than held here.
+     *
+     * @param world the world, or null
+     * @return the context set
+     */
     public static Set<Context> worldContext(String world) {
         if (world == null) {
-            return Collections.emptySet();
+            return ContextSet.empty();
         }
-        return Collections.singleton(new PexWorldContext(world));
+        return ContextSet.intern(ContextSet.of(PexWorldContext.of(world)));
     }
 
 }
@@ -0,0 +1,141 @@
+/*
+ * This file is part of synapse, licensed under the MIT License.
+ *
+ *  Copyright (c) lucko (Luck) <luck@lucko.me>
+ *  Copyright (c) contributors
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package me.lucko.synapse.pex.impl;
+
+import me.lucko.synapse.generic.future.CompletableFutureAction;
+import me.lucko.synapse.util.FutureAction;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Saves PermissionsEx entities to the backend after they have been modified.
+ *
+ * <p>Changes are applied to the in-memory entity straight away, and a save
+ * is scheduled for a short time later. Any further changes made to the same
+ * entity before then share the same save, so a burst of changes results in
+ * a single call to {@code save()}.</p>
+ *
+ * <p>PermissionsEx entities are not thread safe, so {@code save()} must run
+ * on the same thread that modifies them. The plugin passes an executor for
+ * the server thread; with the default executor, saves run on the queue's
+ * own thread and callers must not modify entities concurrently.</p>
+ */
+public class PexSaveQueue {
+    private final long window;
+    private final Executor saveExecutor;
+    private final Logger logger;
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "synapse-pex-saver");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // guarded by 'this'
+    private final Map<PexSubject, CompletableFuture<Void>> pending = new IdentityHashMap<>();
+
+    public PexSaveQueue(long window, TimeUnit unit, Logger logger) {
+        this(window, unit, Runnable::run, logger);
+    }
+
+    /**
+     * Creates a save queue.
+     *
+     * @param window how long to wait for further changes before saving
+     * @param unit the unit of {@code window}
+     * @param saveExecutor the executor entities are saved on
+     * @param logger the logger save failures are reported to
+     */
+    public PexSaveQueue(long window, TimeUnit unit, Executor saveExecutor, Logger logger) {
+        this.window = unit.toNanos(window);
+        this.saveExecutor = saveExecutor;
+        this.logger = logger;
+    }
+
+    /**
+     * Schedules a save of the given subject.
+     *
+     * @param subject the subject
+     * @return an action which completes once the subject has been saved
+     */
+    public FutureAction submit(PexSubject subject) {
+        CompletableFuture<Void> future;
+        synchronized (this) {
+            future = pending.get(subject);
+            if (future == null) {
+                future = new CompletableFuture<>();
+                pending.put(subject, future);
+                executor.schedule(() -> saveExecutor.execute(() -> save(subject)), window, TimeUnit.NANOSECONDS);
+            }
+        }
+        return new CompletableFutureAction(future);
+    }
+
+    private void save(PexSubject subject) {
+        CompletableFuture<Void> future;
+        synchronized (this) {
+            future = pending.remove(subject);
+        }
+        if (future == null) {
+            return;
+        }
+
+        try {
+            subject.getEntity().save();
+            future.complete(null);
+        } catch (Throwable t) {
+            logger.log(Level.SEVERE, "Unable to save " + subject.getIdentifier(), t);
+            future.completeExceptionally(t);
+        }
+    }
+
+    public synchronized int getPending() {
+        return pending.size();
+    }
+
+    /**
+     * Saves all pending subjects on the calling thread, and stops the queue.
+     */
+    public void shutdown() {
+        List<PexSubject> subjects;
+        synchronized (this) {
+            subjects = new ArrayList<>(pending.keySet());
+        }
+        executor.shutdownNow();
+        for (PexSubject subject : subjects) {
+            save(subject);
+        }
+    }
+}
@@ -25,10 +25,10 @@
 
 package me.lucko.synapse.pex.impl;
 
+import me.lucko.synapse.generic.ContextSet;
 import me.lucko.synapse.permission.context.Context;
 import me.lucko.synapse.permission.options.SetOptions;
 
-import java.util.Collections;
 import java.util.Set;
 
 import javax.annotation.Nonnull;
@@ -118,9 +118,9 @@ public class PexSetOptions implements SetOptions {
     @Override
     public Set<Context> getContexts() {
         if (world == null) {
-            return Collections.emptySet();
+            return ContextSet.empty();
         } else {
-            return Collections.singleton(new PexWorldContext(world));
+            return ContextSet.of(PexWorldContext.of(world));
         }
     }
 }
@@ -26,10 +26,14 @@
 package me.lucko.synapse.pex.impl;
 
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
 
 import me.lucko.synapse.generic.AbstractSubject;
+import me.lucko.synapse.generic.SimpleExpiringGroupMembership;
+import me.lucko.synapse.generic.SimpleExpiringPermissionNode;
 import me.lucko.synapse.generic.SimpleGroupMembership;
 import me.lucko.synapse.generic.SimplePermissionNode;
+import me.lucko.synapse.generic.future.CompletedFutureAction;
 import me.lucko.synapse.permission.context.Context;
 import me.lucko.synapse.permission.membership.GroupMembership;
 import me.lucko.synapse.permission.node.PermissionNode;
@@ -41,10 +45,18 @@ import me.lucko.synapse.util.FutureAction;
 import ru.tehkode.permissions.PermissionEntity;
 import ru.tehkode.permissions.PermissionGroup;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
@@ -53,46 +65,89 @@ public abstract class PexSubject extends AbstractSubject {
     protected final PexPermissionService service;
     private final PermissionEntity entity;
 
+    // incremented whenever PermissionsEx reports a change to the entity
+    private final AtomicInteger version = new AtomicInteger();
+    private volatile Snapshot<PermissionNode> permissions = null;
+    private volatile Snapshot<GroupMembership> groups = null;
+    private volatile Compiled globalMatcher = null;
+    private final Map<String, Compiled> worldMatchers = new ConcurrentHashMap<>();
+    private volatile Options globalOptions = null;
+    private final Map<String, Options> worldOptions = new ConcurrentHashMap<>();
+
     public PexSubject(PexPermissionService service, PermissionEntity entity) {
         super(service);
         this.service = service;
         this.entity = entity;
     }
 
+    /**
+     * Marks the cached permission and group snapshots as out of date.
+     */
+    public void invalidateSnapshots() {
+        version.incrementAndGet();
+    }
+
     @Nonnull
     @Override
     public Collection<PermissionNode> getPermissions() {
+        int version = this.version.get();
+        Snapshot<PermissionNode> snapshot = this.permissions;
+        if (snapshot != null && snapshot.version == version) {
+            return snapshot.values;
+        }
+
         Map<String, List<String>> permissions = entity.getAllPermissions();
         ImmutableList.Builder<PermissionNode> ret = ImmutableList.builder();
 
         for (Map.Entry<String, List<String>> world : permissions.entrySet()) {
             Set<Context> contexts = PexPermissionService.worldContext(world.getKey());
+            Map<String, Long> expiryTimes = getExpiryTimes(world.getKey(), PexExpiry.Type.PERMISSION);
             for (String perm : world.getValue()) {
-                if (perm.startsWith("-")) {
-                    ret.add(new SimplePermissionNode(perm.substring(1), false, contexts));
+                boolean value = !perm.startsWith("-");
+                String node = value ? perm : perm.substring(1);
+
+                Long expiryTime = expiryTimes.get(node);
+                if (expiryTime != null) {
+                    ret.add(new SimpleExpiringPermissionNode(node, value, contexts, expiryTime));
                 } else {
-                    ret.add(new SimplePermissionNode(perm, true, contexts));
+                    ret.add(SimplePermissionNode.of(node, value, contexts));
                 }
             }
         }
 
-        return ret.build();
+        snapshot = new Snapshot<>(version, ret.build());
+        this.permissions = snapshot;
+        return snapshot.values;
     }
 
     @Nonnull
     @Override
     public Collection<GroupMembership> getGroups() {
+        int version = this.version.get();
+        Snapshot<GroupMembership> snapshot = this.groups;
+        if (snapshot != null && snapshot.version == version) {
+            return snapshot.values;
+        }
+
         Map<String, List<PermissionGroup>> parents = entity.getAllParents();
         ImmutableList.Builder<GroupMembership> ret = ImmutableList.builder();
 
         for (Map.Entry<String, List<PermissionGroup>> world : parents.entrySet()) {
             Set<Context> contexts = PexPermissionService.worldContext(world.getKey());
+            Map<String, Long> expiryTimes = getExpiryTimes(world.getKey(), PexExpiry.Type.GROUP);
             for (PermissionGroup parent : world.getValue()) {
-                ret.add(new SimpleGroupMembership(new PexGroup(service, parent), contexts));
+                Long expiryTime = expiryTimes.get(parent.getName().toLowerCase(Locale.ROOT));
+                if (expiryTime != null) {
+                    ret.add(new SimpleExpiringGroupMembership(service.getGroup(parent), contexts, expiryTime));
+                } else {
+                    ret.add(SimpleGroupMembership.of(service.getGroup(parent), contexts));
+                }
             }
         }
 
-        return ret.build();
+        snapshot = new Snapshot<>(version, ret.build());
+        this.groups = snapshot;
+        return snapshot.values;
     }
 
     @Override
@@ -102,85 +157,649 @@ public abstract class PexSubject extends AbstractSubject {
 
     @Override
     public boolean checkPermission(@Nonnull String permission, @Nonnull Set<Context> contexts) {
-        return entity.has(permission, PexPermissionService.getWorld(contexts));
+        String world = PexPermissionService.getWorld(contexts);
+
+        PermissionMatcherMode mode = service.getMatcherMode();
+        if (mode == PermissionMatcherMode.OFF || permission.isEmpty()) {
+            return entity.has(permission, world);
+        }
+
+        Boolean result = checkCompiled(permission, world);
+        if (result == null) {
+            return entity.has(permission, world);
+        }
+
+        if (mode == PermissionMatcherMode.VERIFY) {
+            boolean expected = entity.has(permission, world);
+            if (expected != result) {
+                service.reportMismatch(this, world, permission, expected);
+            }
+            return expected;
+        }
+        return result;
+    }
+
+    String getIdentifier() {
+        return entity.getIdentifier();
+    }
+
+    PermissionEntity getEntity() {
+        return entity;
+    }
+
+    /**
+     * Builds the cached snapshots and options, and the compiled matcher if it
+     * is in use, ahead of the first lookup. Options and matchers are built
+     * globally and for each loaded world, as the world the player will join
+     * in is not yet known.
+     */
+    void warm() {
+        getPermissions();
+        getGroups();
+        getOptions(null);
+        boolean compile = service.getMatcherMode() != PermissionMatcherMode.OFF;
+        if (compile) {
+            getCompiled(null);
+        }
+        for (String world : service.getWorlds()) {
+            getOptions(world);
+            if (compile) {
+                getCompiled(world);
+            }
+        }
+    }
+
+    @Nullable
+    private Boolean checkCompiled(String permission, String world) {
+        Compiled compiled = getCompiled(world);
+        return compiled.permissions == null ? null : compiled.permissions.check(permission);
+    }
+
+    /**
+     * Gets a stamp which changes whenever this subject, or any group, is
+     * modified.
+     */
+    long getStamp() {
+        return ((long) version.get() << 32) | (service.getGroupGeneration() & 0xFFFFFFFFL);
+    }
+
+    private Compiled getCompiled(String world) {
+        long stamp = getStamp();
+
+        Compiled compiled = world == null ? globalMatcher : worldMatchers.get(world);
+        if (compiled == null || compiled.stamp != stamp) {
+            compiled = new Compiled(stamp, CompiledPermissions.compile(resolvePermissions(world)));
+            if (world == null) {
+                globalMatcher = compiled;
+            } else {
+                worldMatchers.put(world, compiled);
+            }
+        }
+        return compiled;
     }
 
     @Nonnull
     @Override
     public FutureAction setPermission(@Nonnull String permission, @Nonnull SetOptions options) {
+        PexSetOptions opts = (PexSetOptions) options;
+        String world = opts.getWorld();
 
-        return null;
+        List<String> permissions = new ArrayList<>(entity.getOwnPermissions(world));
+        permissions.remove(permission);
+        permissions.remove("-" + permission);
+        permissions.add(0, opts.shouldNegate() ? "-" + permission : permission);
+        entity.setPermissions(permissions, world);
+
+        updateExpiry(PexExpiry.Type.PERMISSION, world, permission, opts);
+
+        return service.getSaveQueue().submit(this);
     }
 
     @Nonnull
     @Override
     public FutureAction unsetPermission(@Nonnull String permission, @Nonnull UnsetOptions options) {
-        return null;
+        PexUnsetOptions opts = (PexUnsetOptions) options;
+        boolean changed = false;
+        for (String world : getTargetWorlds(opts, entity.getAllPermissions())) {
+            changed |= unsetPermission(permission, world, opts);
+        }
+        return changed ? service.getSaveQueue().submit(this) : CompletedFutureAction.INSTANCE;
+    }
+
+    private boolean unsetPermission(String permission, String world, PexUnsetOptions opts) {
+        if (opts.shouldMatchExpiry() && !hasExpiry(PexExpiry.Type.PERMISSION, world, permission, opts.getExpiryTime())) {
+            return false;
+        }
+
+        List<String> permissions = new ArrayList<>(entity.getOwnPermissions(world));
+        boolean changed = permissions.remove(permission);
+        changed |= permissions.remove("-" + permission);
+        if (changed) {
+            entity.setPermissions(permissions, world);
+        }
+        changed |= removeExpiry(PexExpiry.Type.PERMISSION, world, permission);
+        return changed;
     }
 
     @Nonnull
     @Override
     public FutureAction addGroup(@Nonnull Group group, @Nonnull SetOptions options) {
-        return null;
+        PexSetOptions opts = (PexSetOptions) options;
+        String world = opts.getWorld();
+        String name = resolveGroup(group);
+
+        // add the parent before the record, as records for parents which
+        // aren't present are dropped when the entity changes
+        boolean changed = false;
+        List<String> parents = new ArrayList<>(entity.getOwnParentIdentifiers(world));
+        if (!containsIgnoreCase(parents, name)) {
+            parents.add(0, name);
+            entity.setParentsIdentifier(parents, world);
+            changed = true;
+        }
+
+        changed |= updateExpiry(PexExpiry.Type.GROUP, world, name, opts);
+        return changed ? service.getSaveQueue().submit(this) : CompletedFutureAction.INSTANCE;
     }
 
     @Nonnull
     @Override
     public FutureAction removeGroup(@Nonnull Group group, @Nonnull UnsetOptions options) {
-        return null;
+        PexUnsetOptions opts = (PexUnsetOptions) options;
+        boolean changed = false;
+        for (String world : getTargetWorlds(opts, entity.getAllParents())) {
+            changed |= removeGroup(group.getName(), world, opts);
+        }
+        return changed ? service.getSaveQueue().submit(this) : CompletedFutureAction.INSTANCE;
+    }
+
+    private boolean removeGroup(String name, String world, PexUnsetOptions opts) {
+        if (opts.shouldMatchExpiry() && !hasExpiry(PexExpiry.Type.GROUP, world, name, opts.getExpiryTime())) {
+            return false;
+        }
+
+        List<String> parents = new ArrayList<>(entity.getOwnParentIdentifiers(world));
+        boolean changed = parents.removeIf(parent -> parent.equalsIgnoreCase(name));
+        if (changed) {
+            entity.setParentsIdentifier(parents, world);
+        }
+        changed |= removeExpiry(PexExpiry.Type.GROUP, world, name);
+        return changed;
+    }
+
+    /**
+     * Gets the worlds an unset applies to: the given world if the options
+     * match contexts, otherwise every world the entity has values or expiry
+     * records in, including the global (null) world.
+     */
+    private Collection<String> getTargetWorlds(PexUnsetOptions opts, Map<String, ?> values) {
+        if (opts.shouldMatchContexts()) {
+            return Collections.singleton(opts.getWorld());
+        }
+
+        Set<String> worlds = new HashSet<>(values.keySet());
+        worlds.addAll(entity.getAllOptions().keySet());
+        worlds.add(null);
+        return worlds;
+    }
+
+    /**
+     * Records, or clears, the expiry of a value which has just been set.
+     *
+     * @return true if the stored records changed
+     */
+    private boolean updateExpiry(PexExpiry.Type type, String world, String name, PexSetOptions opts) {
+        if (opts.shouldExpire()) {
+            return putExpiry(new PexExpiry(type, world, name, opts.getExpiryTime()));
+        } else {
+            // setting a permanent value replaces a temporary one
+            return removeExpiry(type, world, name);
+        }
+    }
+
+    /**
+     * Removes a temporary value, if the given record is still current.
+     *
+     * @param expiry the record which has expired
+     */
+    void expire(PexExpiry expiry) {
+        String world = expiry.getWorld();
+        List<PexExpiry> expiries = new ArrayList<>(getExpiries(world));
+        if (!expiries.remove(expiry)) {
+            return;
+        }
+        setExpiries(world, expiries);
+
+        switch (expiry.getType()) {
+            case PERMISSION:
+                List<String> permissions = new ArrayList<>(entity.getOwnPermissions(world));
+                permissions.remove(expiry.getName());
+                permissions.remove("-" + expiry.getName());
+                entity.setPermissions(permissions, world);
+                break;
+            case GROUP:
+                List<String> parents = new ArrayList<>(entity.getOwnParentIdentifiers(world));
+                parents.removeIf(parent -> parent.equalsIgnoreCase(expiry.getName()));
+                entity.setParentsIdentifier(parents, world);
+                break;
+            case PREFIX:
+                entity.setPrefix(null, world);
+                break;
+            case SUFFIX:
+                entity.setSuffix(null, world);
+                break;
+            case METADATA:
+                entity.setOption(expiry.getName(), null, world);
+                break;
+        }
+
+        service.getSaveQueue().submit(this);
+    }
+
+    /**
+     * Drops expiry records for values which are no longer set, so a value
+     * removed outside of synapse and then set again permanently is not
+     * treated as temporary. Called when PermissionsEx reports a change to
+     * the entity.
+     */
+    void reconcileExpiries() {
+        Map<String, List<PexExpiry>> stale = new HashMap<>();
+        for (PexExpiry expiry : getAllExpiries()) {
+            if (!isPresent(expiry)) {
+                stale.computeIfAbsent(expiry.getWorld(), w -> new ArrayList<>()).add(expiry);
+            }
+        }
+        if (stale.isEmpty()) {
+            return;
+        }
+
+        for (Map.Entry<String, List<PexExpiry>> world : stale.entrySet()) {
+            List<PexExpiry> expiries = new ArrayList<>(getExpiries(world.getKey()));
+            for (PexExpiry expiry : world.getValue()) {
+                expiries.remove(expiry);
+                service.getExpiryManager().cancel(this, expiry);
+            }
+            setExpiries(world.getKey(), expiries);
+        }
+        service.getSaveQueue().submit(this);
+    }
+
+    private boolean isPresent(PexExpiry expiry) {
+        String world = expiry.getWorld();
+        switch (expiry.getType()) {
+            case PERMISSION:
+                List<String> permissions = entity.getOwnPermissions(world);
+                return permissions.contains(expiry.getName()) || permissions.contains("-" + expiry.getName());
+            case GROUP:
+                return containsIgnoreCase(entity.getOwnParentIdentifiers(world), expiry.getName());
+            case PREFIX:
+                return !isNullOrEmpty(entity.getOwnPrefix(world));
+            case SUFFIX:
+                return !isNullOrEmpty(entity.getOwnSuffix(world));
+            case METADATA:
+                return entity.getOwnOption(expiry.getName(), world, null) != null;
+            default:
+                return true;
+        }
+    }
+
+    private static boolean isNullOrEmpty(String s) {
+        return s == null || s.isEmpty();
+    }
+
+    /**
+     * Gets the stored expiry records for this subject, in all worlds.
+     */
+    List<PexExpiry> getAllExpiries() {
+        List<PexExpiry> ret = new ArrayList<>();
+        for (Map.Entry<String, Map<String, String>> world : entity.getAllOptions().entrySet()) {
+            ret.addAll(PexExpiry.parse(world.getValue().get(PexExpiry.OPTION), world.getKey()));
+        }
+        return ret;
+    }
+
+    private List<PexExpiry> getExpiries(String world) {
+        return PexExpiry.parse(entity.getOwnOption(PexExpiry.OPTION, world, null), world);
+    }
+
+    private void setExpiries(String world, List<PexExpiry> expiries) {
+        entity.setOption(PexExpiry.OPTION, expiries.isEmpty() ? null : PexExpiry.serialize(expiries), world);
+    }
+
+    private Map<String, Long> getExpiryTimes(String world, PexExpiry.Type type) {
+        List<PexExpiry> expiries = getExpiries(world);
+        if (expiries.isEmpty()) {
+            return Collections.emptyMap();
+        }
+
+        Map<String, Long> ret = new HashMap<>();
+        for (PexExpiry expiry : expiries) {
+            if (expiry.getType() == type) {
+                ret.put(type == PexExpiry.Type.GROUP ? expiry.getName().toLowerCase(Locale.ROOT) : expiry.getName(), expiry.getExpiryTime());
+            }
+        }
+        return ret;
+    }
+
+    private boolean hasExpiry(PexExpiry.Type type, String world, String name, long expiryTime) {
+        for (PexExpiry expiry : getExpiries(world)) {
+            if (expiry.matches(type, name) && (expiryTime == -1 || expiry.getExpiryTime() == expiryTime)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Stores and schedules an expiry record, replacing any existing record
+     * for the same permission or group.
+     *
+     * @return true if the stored records changed
+     */
+    private boolean putExpiry(PexExpiry expiry) {
+        List<PexExpiry> expiries = new ArrayList<>(getExpiries(expiry.getWorld()));
+        if (expiries.contains(expiry)) {
+            return false;
+        }
+        expiries.removeIf(e -> e.matches(expiry.getType(), expiry.getName()));
+        expiries.add(expiry);
+        setExpiries(expiry.getWorld(), expiries);
+
+        service.getExpiryManager().schedule(this, expiry);
+        return true;
+    }
+
+    /**
+     * Removes and unschedules any expiry record for the given permission or
+     * group.
+     *
+     * @return true if a record was removed
+     */
+    private boolean removeExpiry(PexExpiry.Type type, String world, String name) {
+        List<PexExpiry> expiries = getExpiries(world);
+        if (expiries.isEmpty()) {
+            return false;
+        }
+
+        boolean changed = false;
+        List<PexExpiry> remaining = new ArrayList<>(expiries);
+        for (Iterator<PexExpiry> it = remaining.iterator(); it.hasNext(); ) {
+            PexExpiry expiry = it.next();
+            if (expiry.matches(type, name)) {
+                it.remove();
+                service.getExpiryManager().cancel(this, expiry);
+                changed = true;
+            }
+        }
+
+        if (changed) {
+            setExpiries(world, remaining);
+        }
+        return changed;
+    }
+
+    /**
+     * Gets the name of the PermissionsEx group which backs the given group.
+     */
+    private String resolveGroup(Group group) {
+        // look the group up by name, so groups from other services are accepted
+        Group pexGroup = service.getGroup(group.getName());
+        if (pexGroup == null) {
+            throw new IllegalArgumentException("Group does not exist: " + group.getName());
+        }
+        return pexGroup.getName();
+    }
+
+    private static boolean containsIgnoreCase(List<String> list, String value) {
+        for (String element : list) {
+            if (element.equalsIgnoreCase(value)) {
+                return true;
+            }
+        }
+        return false;
     }
 
     @Nullable
     @Override
     public String getPrefix() {
-        return null;
+        return getOptions(null).prefix;
     }
 
     @Nullable
     @Override
     public String getPrefix(@Nonnull Set<Context> contexts) {
-        return null;
+        return getOptions(PexPermissionService.getWorld(contexts)).prefix;
     }
 
     @Nullable
     @Override
     public String getSuffix() {
-        return null;
+        return getOptions(null).suffix;
     }
 
     @Nullable
     @Override
     public String getSuffix(@Nonnull Set<Context> contexts) {
-        return null;
+        return getOptions(PexPermissionService.getWorld(contexts)).suffix;
     }
 
     @Nullable
     @Override
     public String getMetadata(@Nonnull String key) {
-        return null;
+        return getOptions(null).values.get(key);
     }
 
     @Nullable
     @Override
     public String getMetadata(@Nonnull String key, @Nonnull Set<Context> contexts) {
+        return getOptions(PexPermissionService.getWorld(contexts)).values.get(key);
+    }
+
+    /**
+     * Gets the groups this subject inherits from in the given world, nearest
+     * first.
+     */
+    PermissionGroup[] getAncestors(String world) {
+        PexInheritanceGraph graph = service.getInheritanceGraph();
+        if (entity instanceof PermissionGroup) {
+            return graph.getAncestors((PermissionGroup) entity, world);
+        }
+        return graph.merge(entity, world);
+    }
+
+    /**
+     * Gets the permissions which apply to this subject in the given world,
+     * in the order PermissionsEx checks them.
+     */
+    private List<String> resolvePermissions(String world) {
+        List<String> worlds = worldChain(world);
+        List<String> permissions = new ArrayList<>();
+        addPermissions(entity, worlds, permissions);
+        for (PermissionGroup ancestor : getAncestors(world)) {
+            addPermissions(ancestor, worlds, permissions);
+        }
+        return permissions;
+    }
+
+    private static void addPermissions(PermissionEntity entity, List<String> worlds, List<String> permissions) {
+        for (String w : worlds) {
+            permissions.addAll(entity.getTimedPermissions(w));
+            permissions.addAll(entity.getOwnPermissions(w));
+        }
+    }
+
+    /**
+     * Gets the options which apply to this subject in the given world,
+     * including those inherited from parent groups.
+     */
+    private Options getOptions(String world) {
+        long stamp = getStamp();
+
+        Options options = world == null ? globalOptions : worldOptions.get(world);
+        if (options == null || options.stamp != stamp) {
+            List<String> worlds = worldChain(world);
+            PermissionGroup[] ancestors = getAncestors(world);
+
+            Map<String, String> values = new HashMap<>();
+            addOptions(entity, worlds, values);
+            for (PermissionGroup ancestor : ancestors) {
+                addOptions(ancestor, worlds, values);
+            }
+            values.remove(PexExpiry.OPTION);
+
+            String prefix = resolveAffix(entity, ancestors, worlds, true);
+            String suffix = resolveAffix(entity, ancestors, worlds, false);
+            options = new Options(stamp, ImmutableMap.copyOf(values), prefix, suffix);
+            if (world == null) {
+                globalOptions = options;
+            } else {
+                worldOptions.put(world, options);
+            }
+        }
+        return options;
+    }
+
+    /**
+     * Gets the given world, followed by the worlds it inherits from, and
+     * finally null for the global scope.
+     */
+    private List<String> worldChain(String world) {
+        List<String> worlds = new ArrayList<>();
+        if (world != null) {
+            addWorld(world, worlds);
+        }
+        worlds.add(null);
+        return worlds;
+    }
+
+    private void addWorld(String world, List<String> worlds) {
+        if (worlds.contains(world)) {
+            return;
+        }
+        worlds.add(world);
+        for (String parent : service.getManager().getWorldInheritance(world)) {
+            addWorld(parent, worlds);
+        }
+    }
+
+    /**
+     * Resolves the prefix or suffix. Backends store these separately from
+     * other options, and PermissionsEx treats an empty value as unset.
+     */
+    private static String resolveAffix(PermissionEntity entity, PermissionGroup[] ancestors, List<String> worlds, boolean prefix) {
+        String value = ownAffix(entity, worlds, prefix);
+        for (int i = 0; value == null && i < ancestors.length; i++) {
+            value = ownAffix(ancestors[i], worlds, prefix);
+        }
+        return value;
+    }
+
+    private static String ownAffix(PermissionEntity entity, List<String> worlds, boolean prefix) {
+        for (String w : worlds) {
+            String value = prefix ? entity.getOwnPrefix(w) : entity.getOwnSuffix(w);
+            if (value != null && !value.isEmpty()) {
+                return value;
+            }
+        }
         return null;
     }
 
+    // values set closer to the subject take priority, so only add options
+    // which have not been seen yet
+    private static void addOptions(PermissionEntity entity, List<String> worlds, Map<String, String> values) {
+        for (String w : worlds) {
+            for (Map.Entry<String, String> option : entity.getOptions(w).entrySet()) {
+                values.putIfAbsent(option.getKey(), option.getValue());
+            }
+        }
+    }
+
     @Nonnull
     @Override
     public FutureAction setPrefix(@Nullable String prefix, @Nonnull SetOptions options) {
-        return null;
+        PexSetOptions opts = (PexSetOptions) options;
+        entity.setPrefix(prefix, opts.getWorld());
+        if (prefix == null) {
+            removeExpiry(PexExpiry.Type.PREFIX, opts.getWorld(), "prefix");
+        } else {
+            updateExpiry(PexExpiry.Type.PREFIX, opts.getWorld(), "prefix", opts);
+        }
+        return service.getSaveQueue().submit(this);
     }
 
     @Nonnull
     @Override
     public FutureAction setSuffix(@Nullable String suffix, @Nonnull SetOptions options) {
-        return null;
+        PexSetOptions opts = (PexSetOptions) options;
+        entity.setSuffix(suffix, opts.getWorld());
+        if (suffix == null) {
+            removeExpiry(PexExpiry.Type.SUFFIX, opts.getWorld(), "suffix");
+        } else {
+            updateExpiry(PexExpiry.Type.SUFFIX, opts.getWorld(), "suffix", opts);
+        }
+        return service.getSaveQueue().submit(this);
     }
 
     @Nonnull
     @Override
     public FutureAction setMetadata(@Nonnull String key, @Nullable String value, @Nonnull SetOptions options) {
-        return null;
+        PexSetOptions opts = (PexSetOptions) options;
+        if (key.equals(PexExpiry.OPTION)) {
+            throw new IllegalArgumentException("Reserved metadata key: " + key);
+        }
+        entity.setOption(key, value, opts.getWorld());
+        if (value == null) {
+            removeExpiry(PexExpiry.Type.METADATA, opts.getWorld(), key);
+        } else {
+            updateExpiry(PexExpiry.Type.METADATA, opts.getWorld(), key, opts);
+        }
+        return service.getSaveQueue().submit(this);
+    }
+
+    /**
+     * An immutable list of values, tagged with the version of the entity it
+     * was built from.
+     */
+    private static final class Snapshot<T> {
+        private final int version;
+        private final ImmutableList<T> values;
+
+        Snapshot(int version, ImmutableList<T> values) {
+            this.version = version;
+            this.values = values;
+        }
+    }
+
+    /**
+     * The resolved options for a world, tagged with the entity version and
+     * group generation they were resolved from.
+     */
+    private static final class Options {
+        private final long stamp;
+        private final ImmutableMap<String, String> values;
+        private final String prefix;
+        private final String suffix;
+
+        Options(long stamp, ImmutableMap<String, String> values, String prefix, String suffix) {
+            this.stamp = stamp;
+            this.values = values;
+            this.prefix = prefix;
+            this.suffix = suffix;
+        }
+    }
+
+    /**
+     * A compiled permission list, tagged with the entity version and group
+     * generation it was built from.
+     */
+    private static final class Compiled {
+        private final long stamp;
+        // null if the list could not be compiled
+        private final CompiledPermissions permissions;
+
+        Compiled(long stamp, CompiledPermissions permissions) {
+            this.stamp = stamp;
+            this.permissions = permissions;
+        }
     }
 }
@@ -25,10 +25,10 @@
 
 package me.lucko.synapse.pex.impl;
 
+import me.lucko.synapse.generic.ContextSet;
 import me.lucko.synapse.permission.context.Context;
 import me.lucko.synapse.permission.options.UnsetOptions;
 
-import java.util.Collections;
 import java.util.Set;
 
 import javax.annotation.Nonnull;
@@ -38,14 +38,20 @@ public class PexUnsetOptions implements UnsetOptions {
 
     private final String world;
     private final boolean targetTemporary;
+    private final long expiry;
 
     private PexUnsetOptions() {
-        this(null, false);
+        this(null, false, -1);
     }
 
-    private PexUnsetOptions(String world, boolean targetTemporary) {
+    private PexUnsetOptions(String world, boolean targetTemporary, long expiry) {
         this.world = world;
         this.targetTemporary = targetTemporary;
+        this.expiry = expiry;
+    }
+
+    public String getWorld() {
+        return world;
     }
 
     @Override
@@ -56,25 +62,25 @@ public class PexUnsetOptions implements UnsetOptions {
     @Nonnull
     @Override
     public UnsetOptions withExpiry(long expiryTime) {
-        return new PexUnsetOptions(world, true);
+        return new PexUnsetOptions(world, true, expiryTime);
     }
 
     @Nonnull
     @Override
     public UnsetOptions matchAnyExpiry() {
-        return new PexUnsetOptions(world, false);
+        return new PexUnsetOptions(world, false, -1);
     }
 
     @Nonnull
     @Override
     public UnsetOptions withContexts(@Nonnull Set<Context> contexts) {
-        return new PexUnsetOptions(PexPermissionService.getWorld(contexts), targetTemporary);
+        return new PexUnsetOptions(PexPermissionService.getWorld(contexts), targetTemporary, expiry);
     }
 
     @Nonnull
     @Override
     public UnsetOptions matchAnyContext() {
-        return new PexUnsetOptions(null, targetTemporary);
+        return new PexUnsetOptions(null, targetTemporary, expiry);
     }
 
     @Override
@@ -84,7 +90,7 @@ public class PexUnsetOptions implements UnsetOptions {
 
     @Override
     public long getExpiryTime() throws IllegalStateException {
-        return -1;
+        return expiry;
     }
 
     @Override
@@ -98,6 +104,6 @@ public class PexUnsetOptions implements UnsetOptions {
             throw new IllegalStateException();
         }
 
-        return Collections.singleton(new PexWorldContext(world));
+        return ContextSet.of(PexWorldContext.of(world));
     }
 }
@@ -32,8 +32,10 @@ import me.lucko.synapse.permission.subject.User;
 import ru.tehkode.permissions.PermissionUser;
 
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
@@ -41,11 +43,21 @@ import javax.annotation.Nullable;
 public class PexUser extends PexSubject implements User {
     private final UUID uuid;
     private final PermissionUser user;
+    // when this instance was created, for evicting the oldest offline users first
+    final long created;
+
+    private volatile PrimaryGroup globalPrimaryGroup = null;
+    private final Map<String, PrimaryGroup> worldPrimaryGroups = new ConcurrentHashMap<>();
 
     public PexUser(PexPermissionService service, UUID uuid, PermissionUser user) {
         super(service, user);
         this.uuid = uuid;
         this.user = user;
+        this.created = System.nanoTime();
+    }
+
+    public PermissionUser getHandle() {
+        return user;
     }
 
     @Nonnull
@@ -63,26 +75,52 @@ public class PexUser extends PexSubject implements User {
     @Nullable
     @Override
     public Group getPrimaryGroup() {
-        List<String> parents = user.getParentIdentifiers();
-        for (String parent : parents) {
-            Group group = service.getGroup(parent);
-            if (group != null) {
-                return group;
-            }
-        }
-        return null;
+        return getPrimaryGroup((String) null);
     }
 
     @Nullable
     @Override
     public Group getPrimaryGroup(Set<Context> contexts) {
-        List<String> parents = user.getParentIdentifiers(PexPermissionService.getWorld(contexts));
+        return getPrimaryGroup(PexPermissionService.getWorld(contexts));
+    }
+
+    private Group getPrimaryGroup(String world) {
+        long stamp = getStamp();
+
+        PrimaryGroup primaryGroup = world == null ? globalPrimaryGroup : worldPrimaryGroups.get(world);
+        if (primaryGroup != null && primaryGroup.stamp == stamp) {
+            return primaryGroup.group;
+        }
+
+        Group group = null;
+        List<String> parents = user.getParentIdentifiers(world);
         for (String parent : parents) {
-            Group group = service.getGroup(parent);
+            group = service.getGroup(parent);
             if (group != null) {
-                return group;
+                break;
             }
         }
-        return null;
+
+        primaryGroup = new PrimaryGroup(stamp, group);
+        if (world == null) {
+            globalPrimaryGroup = primaryGroup;
+        } else {
+            worldPrimaryGroups.put(world, primaryGroup);
+        }
+        return group;
+    }
+
+    /**
+     * A resolved primary group, tagged with the stamp it was resolved at.
+     */
+    private static final class PrimaryGroup {
+        private final long stamp;
+        // null if the user has no groups
+        private final Group group;
+
+        PrimaryGroup(long stamp, Group group) {
+            this.stamp = stamp;
+            this.group = group;
+        }
     }
 }
@@ -25,10 +25,23 @@
 
 package me.lucko.synapse.pex.impl;
 
+import me.lucko.synapse.generic.ContextInterner;
 import me.lucko.synapse.generic.SimpleContext;
 
 class PexWorldContext extends SimpleContext {
-    PexWorldContext(String world) {
+    private static final ContextInterner<PexWorldContext> INTERNER = new ContextInterner<>((key, value) -> new PexWorldContext(value));
+
+    /**
+     * Gets the canonical context for the given world.
+     *
+     * @param world the world
+     * @return the context
+     */
+    static PexWorldContext of(String world) {
+        return INTERNER.intern("world", world);
+    }
+
+    private PexWorldContext(String world) {
         super("world", world);
     }
 }
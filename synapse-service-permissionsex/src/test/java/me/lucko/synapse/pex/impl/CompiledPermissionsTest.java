@@ -0,0 +1,125 @@
+/*
+ * This file is part of synapse, licensed under the MIT License.
+ *
+ *  Copyright (c) lucko (Luck) <luck@lucko.me>
+ *  Copyright (c) contributors
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package me.lucko.synapse.pex.impl;
+
+import org.junit.Test;
+
+import ru.tehkode.permissions.RegExpMatcher;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Checks that {@link CompiledPermissions} gives the same answers as the
+ * PermissionsEx regex matcher.
+ */
+public class CompiledPermissionsTest {
+    private static final String[] SEGMENTS = {"a", "b", "Kit", "kit", "tier", "1", "2", "3", "12", "*", "a*", "*b"};
+    private static final String[] PERMISSIONS = {
+            "a", "b", "a.b", "a.b.c", "kit.tier.1", "kit.tier.2", "kit.tier.12", "KIT.Tier.3", "kit",
+            "kit.a", "ab", "a.bb", "b.a", "tier.1.a", "", "kit.tier", "kit.tier.1.a"
+    };
+
+    private final RegExpMatcher matcher = new RegExpMatcher();
+
+    /**
+     * Evaluates a permission list the way PermissionsEx does: the first
+     * matching expression decides the result.
+     */
+    private boolean pex(List<String> expressions, String permission) {
+        for (String expression : expressions) {
+            boolean value = !expression.startsWith("-");
+            String pattern = value ? expression : expression.substring(1);
+            if (pattern.startsWith("#")) {
+                pattern = pattern.substring(1);
+            }
+            if (matcher.isMatches(pattern, permission)) {
+                return value;
+            }
+        }
+        return false;
+    }
+
+    private void assertSame(List<String> expressions) {
+        CompiledPermissions compiled = CompiledPermissions.compile(expressions);
+        if (compiled == null) {
+            return;
+        }
+        for (String permission : PERMISSIONS) {
+            Boolean result = compiled.check(permission);
+            assertNotNull(result);
+            assertEquals(expressions + " checking " + permission, pex(expressions, permission), result);
+        }
+    }
+
+    @Test
+    public void testFixedLists() {
+        assertSame(Arrays.asList("a.b", "-a.*"));
+        assertSame(Arrays.asList("-a.b", "a.*"));
+        assertSame(Arrays.asList("*", "-kit.tier.1"));
+        assertSame(Arrays.asList("-kit.tier.1", "*"));
+        assertSame(Arrays.asList("kit.*.1", "-kit.*"));
+        assertSame(Arrays.asList("#kit.tier.2", "-#kit.tier.*"));
+        assertSame(Arrays.asList("a*", "-*b"));
+    }
+
+    @Test
+    public void testRangesAreNotCompiled() {
+        assertNull(CompiledPermissions.compile(Arrays.asList("kit.tier.1-3")));
+        assertNull(CompiledPermissions.compile(Arrays.asList("a.b", "-kit.tier.10-12")));
+        assertNotNull(CompiledPermissions.compile(Arrays.asList("kit.tier-1", "kit.1-", "-1.a")));
+    }
+
+    @Test
+    public void testRandomLists() {
+        Random random = new Random(42);
+        for (int i = 0; i < 5000; i++) {
+            int size = 1 + random.nextInt(6);
+            List<String> expressions = new ArrayList<>(size);
+            for (int j = 0; j < size; j++) {
+                StringBuilder sb = new StringBuilder();
+                if (random.nextInt(3) == 0) {
+                    sb.append('-');
+                }
+                int segments = 1 + random.nextInt(3);
+                for (int k = 0; k < segments; k++) {
+                    if (k != 0) {
+                        sb.append('.');
+                    }
+                    sb.append(SEGMENTS[random.nextInt(SEGMENTS.length)]);
+                }
+                expressions.add(sb.toString());
+            }
+            assertSame(expressions);
+        }
+    }
+}
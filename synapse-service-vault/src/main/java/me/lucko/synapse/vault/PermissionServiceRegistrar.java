@@ -27,24 +27,33 @@ package me.lucko.synapse.vault;
 
 import me.lucko.synapse.permission.PermissionService;
 import me.lucko.synapse.vault.impl.VaultPermissionService;
+import me.lucko.synapse.vault.impl.VaultWriteExecutor;
 
 import net.milkbowl.vault.chat.Chat;
 import net.milkbowl.vault.permission.Permission;
 
 import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
 import org.bukkit.event.Listener;
+import org.bukkit.event.player.PlayerChangedWorldEvent;
+import org.bukkit.event.player.PlayerJoinEvent;
+import org.bukkit.event.player.PlayerQuitEvent;
 import org.bukkit.event.server.ServiceRegisterEvent;
 import org.bukkit.event.server.ServiceUnregisterEvent;
 import org.bukkit.plugin.RegisteredServiceProvider;
 import org.bukkit.plugin.ServicePriority;
 
+import java.util.concurrent.TimeUnit;
+
 public class PermissionServiceRegistrar implements Listener {
 
     private final SynapseVaultPlugin plugin;
+    private final VaultWriteExecutor writes;
     private VaultPermissionService service = null;
 
-    public PermissionServiceRegistrar(SynapseVaultPlugin plugin) {
+    public PermissionServiceRegistrar(SynapseVaultPlugin plugin, VaultWriteExecutor writes) {
         this.plugin = plugin;
+        this.writes = writes;
     }
 
     public void update() {
@@ -79,7 +88,7 @@ public class PermissionServiceRegistrar implements Listener {
 
         // change
         unregister();
-        service = new VaultPermissionService(permission, chat);
+        service = new VaultPermissionService(permission, chat, writes, plugin.getConfig().getLong("group-cache.refresh-interval", 30), TimeUnit.SECONDS);
         plugin.getServer().getServicesManager().register(PermissionService.class, service, plugin, ServicePriority.Low);
     }
 
@@ -99,4 +108,36 @@ public class PermissionServiceRegistrar implements Listener {
         }
     }
 
+    /**
+     * Evicts user handles which have been offline for longer than the grace
+     * period.
+     */
+    public void cleanup() {
+        VaultPermissionService service = this.service;
+        if (service != null) {
+            service.getUserRegistry().cleanup();
+        }
+    }
+
+    @EventHandler(priority = EventPriority.LOWEST)
+    public void onJoin(PlayerJoinEvent e) {
+        if (service != null) {
+            service.getUserRegistry().onJoin(e.getPlayer());
+        }
+    }
+
+    @EventHandler(priority = EventPriority.LOWEST)
+    public void onWorldChange(PlayerChangedWorldEvent e) {
+        if (service != null) {
+            service.getUserRegistry().onWorldChange(e.getPlayer());
+        }
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onQuit(PlayerQuitEvent e) {
+        if (service != null) {
+            service.getUserRegistry().onQuit(e.getPlayer().getUniqueId());
+        }
+    }
+
 }
@@ -25,6 +25,8 @@
 
 package me.lucko.synapse.vault;
 
+import me.lucko.synapse.vault.impl.VaultWriteExecutor;
+
 import org.bukkit.event.Listener;
 import org.bukkit.plugin.java.JavaPlugin;
 
@@ -33,13 +35,32 @@ import org.bukkit.plugin.java.JavaPlugin;
  */
 public class SynapseVaultPlugin extends JavaPlugin implements Listener {
 
+    private VaultWriteExecutor writes;
     private PermissionServiceRegistrar registrar;
 
     @Override
     public void onEnable() {
-        registrar = new PermissionServiceRegistrar(this);
+        saveDefaultConfig();
+
+        if (getConfig().getString("write-mode", "sync").equalsIgnoreCase("async")) {
+            writes = new VaultWriteExecutor(Math.max(1, getConfig().getInt("write-threads", 2)));
+        } else {
+            writes = VaultWriteExecutor.SYNC;
+        }
+
+        registrar = new PermissionServiceRegistrar(this, writes);
         getServer().getPluginManager().registerEvents(registrar, this);
 
         registrar.update();
+
+        // evict handles for offline users once a minute
+        getServer().getScheduler().runTaskTimerAsynchronously(this, registrar::cleanup, 1200L, 1200L);
+    }
+
+    @Override
+    public void onDisable() {
+        if (writes != null) {
+            writes.shutdown();
+        }
     }
 }
@@ -26,7 +26,6 @@
 package me.lucko.synapse.vault.impl;
 
 import me.lucko.synapse.generic.AbstractSubject;
-import me.lucko.synapse.generic.future.CompletedFutureAction;
 import me.lucko.synapse.permission.context.Context;
 import me.lucko.synapse.permission.membership.GroupMembership;
 import me.lucko.synapse.permission.node.PermissionNode;
@@ -36,6 +35,7 @@ import me.lucko.synapse.permission.subject.Group;
 import me.lucko.synapse.util.FutureAction;
 
 import java.util.Collection;
+import java.util.Locale;
 import java.util.Set;
 
 import javax.annotation.Nonnull;
@@ -44,11 +44,14 @@ import javax.annotation.Nullable;
 public class VaultGroup extends AbstractSubject implements Group {
     private final VaultPermissionService service;
     private final String name;
+    // the key used to order writes to this group
+    private final String subject;
 
     public VaultGroup(VaultPermissionService service, String name) {
         super(service);
         this.service = service;
         this.name = name;
+        this.subject = name.toLowerCase(Locale.ROOT);
     }
 
     @Nonnull
@@ -83,16 +86,14 @@ public class VaultGroup extends AbstractSubject implements Group {
     @Override
     public FutureAction setPermission(@Nonnull String permission, @Nonnull SetOptions options) {
         VaultSetOptions opts = (VaultSetOptions) options;
-        service.vaultPerms.groupAdd(opts.getWorld(), name, permission);
-        return CompletedFutureAction.INSTANCE;
+        return service.writes.submit(subject, () -> service.vaultPerms.groupAdd(opts.getWorld(), name, permission));
     }
 
     @Nonnull
     @Override
     public FutureAction unsetPermission(@Nonnull String permission, @Nonnull UnsetOptions options) {
-        VaultSetOptions opts = (VaultSetOptions) options;
-        service.vaultPerms.groupRemove(opts.getWorld(), name, permission);
-        return CompletedFutureAction.INSTANCE;
+        VaultUnsetOptions opts = (VaultUnsetOptions) options;
+        return service.writes.submit(subject, () -> service.vaultPerms.groupRemove(opts.getWorld(), name, permission));
     }
 
     @Nonnull
@@ -147,23 +148,20 @@ public class VaultGroup extends AbstractSubject implements Group {
     @Override
     public FutureAction setPrefix(@Nullable String prefix, @Nonnull SetOptions options) {
         VaultSetOptions opts = (VaultSetOptions) options;
-        service.vaultChat.setGroupPrefix(opts.getWorld(), name, prefix);
-        return CompletedFutureAction.INSTANCE;
+        return service.writes.submit(subject, () -> service.vaultChat.setGroupPrefix(opts.getWorld(), name, prefix));
     }
 
     @Nonnull
     @Override
     public FutureAction setSuffix(@Nullable String suffix, @Nonnull SetOptions options) {
         VaultSetOptions opts = (VaultSetOptions) options;
-        service.vaultChat.setGroupSuffix(opts.getWorld(), name, suffix);
-        return CompletedFutureAction.INSTANCE;
+        return service.writes.submit(subject, () -> service.vaultChat.setGroupSuffix(opts.getWorld(), name, suffix));
     }
 
     @Nonnull
     @Override
     public FutureAction setMetadata(@Nonnull String key, @Nullable String value, @Nonnull SetOptions options) {
         VaultSetOptions opts = (VaultSetOptions) options;
-        service.vaultChat.setGroupInfoString(opts.getWorld(), name, key, value);
-        return CompletedFutureAction.INSTANCE;
+        return service.writes.submit(subject, () -> service.vaultChat.setGroupInfoString(opts.getWorld(), name, key, value));
     }
 }
@@ -0,0 +1,177 @@
+/*
+ * This file is part of synapse, licensed under the MIT License.
+ *
+ *  Copyright (c) lucko (Luck) <luck@lucko.me>
+ *  Copyright (c) contributors
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package me.lucko.synapse.vault.impl;
+
+import com.google.common.collect.ImmutableList;
+
+import me.lucko.synapse.permission.subject.Group;
+
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Holds one {@link VaultGroup} for each group known to the Vault
+ * implementation.
+ *
+ * <p>The list of groups is loaded from Vault into a snapshot, which is
+ * reloaded once it is older than the refresh interval, or on demand. Names
+ * which are looked up but do not exist are remembered until the next reload,
+ * so repeated lookups for them are cheap.</p>
+ *
+ * <p>Names which come from the Vault implementation itself (a player's
+ * groups), and all names when the implementation has no group list, always
+ * resolve to a group.</p>
+ */
+public class VaultGroupRegistry {
+    // the minimum time between reloads triggered by a lookup for an unknown group
+    private static final long MISS_RELOAD_INTERVAL = TimeUnit.SECONDS.toNanos(1);
+    private static final int MAX_MISSING = 1000;
+
+    private final VaultPermissionService service;
+    private final long refreshInterval;
+    private volatile Snapshot snapshot = null;
+    // groups returned by the implementation which are not in its group list
+    private final Map<String, VaultGroup> unlisted = new ConcurrentHashMap<>();
+
+    VaultGroupRegistry(VaultPermissionService service, long refreshInterval, TimeUnit unit) {
+        this.service = service;
+        this.refreshInterval = unit.toNanos(refreshInterval);
+    }
+
+    public Group get(String name) {
+        if (!service.vaultPerms.hasGroupSupport()) {
+            return getOrCreate(name);
+        }
+
+        String key = name.toLowerCase(Locale.ROOT);
+        Snapshot snapshot = current();
+
+        VaultGroup group = snapshot.groups.get(key);
+        if (group != null || snapshot.missing.contains(key)) {
+            return group;
+        }
+
+        // the group may have been created since the last reload
+        if (System.nanoTime() - snapshot.loadedAt > MISS_RELOAD_INTERVAL) {
+            snapshot = load(snapshot);
+            group = snapshot.groups.get(key);
+            if (group != null) {
+                return group;
+            }
+        }
+
+        if (snapshot.missing.size() < MAX_MISSING) {
+            snapshot.missing.add(key);
+        }
+        return null;
+    }
+
+    /**
+     * Gets the group with the given name, which is known to exist because the
+     * Vault implementation returned it.
+     *
+     * @param name the name of the group
+     * @return the group
+     */
+    public Group getOrCreate(String name) {
+        String key = name.toLowerCase(Locale.ROOT);
+        if (service.vaultPerms.hasGroupSupport()) {
+            VaultGroup group = current().groups.get(key);
+            if (group != null) {
+                return group;
+            }
+        }
+
+        VaultGroup group = unlisted.get(key);
+        if (group == null || !group.getName().equals(name)) {
+            if (unlisted.size() >= MAX_MISSING) {
+                unlisted.clear();
+            }
+            group = new VaultGroup(service, name);
+            unlisted.put(key, group);
+        }
+        return group;
+    }
+
+    public ImmutableList<Group> getAll() {
+        return current().list;
+    }
+
+    private Snapshot current() {
+        Snapshot snapshot = this.snapshot;
+        if (snapshot == null || System.nanoTime() - snapshot.loadedAt > refreshInterval) {
+            snapshot = load(snapshot);
+        }
+        return snapshot;
+    }
+
+    private synchronized Snapshot load(Snapshot expected) {
+        Snapshot previous = this.snapshot;
+        if (previous != expected) {
+            // another thread has already reloaded
+            return previous;
+        }
+
+        String[] names = service.vaultPerms.getGroups();
+
+        Map<String, VaultGroup> groups = new HashMap<>(names.length * 2);
+        ImmutableList.Builder<Group> list = ImmutableList.builder();
+        for (String name : names) {
+            String key = name.toLowerCase(Locale.ROOT);
+            if (groups.containsKey(key)) {
+                continue;
+            }
+
+            // reuse the existing instance if the group is still there
+            VaultGroup group = previous == null ? null : previous.groups.get(key);
+            if (group == null || !group.getName().equals(name)) {
+                group = new VaultGroup(service, name);
+            }
+            groups.put(key, group);
+            list.add(group);
+        }
+
+        Snapshot snapshot = new Snapshot(groups, list.build());
+        this.snapshot = snapshot;
+        return snapshot;
+    }
+
+    private static final class Snapshot {
+        private final Map<String, VaultGroup> groups;
+        private final ImmutableList<Group> list;
+        private final Set<String> missing = ConcurrentHashMap.newKeySet();
+        private final long loadedAt = System.nanoTime();
+
+        private Snapshot(Map<String, VaultGroup> groups, ImmutableList<Group> list) {
+            this.groups = groups;
+            this.list = list;
+        }
+    }
+}
@@ -25,6 +25,7 @@
 
 package me.lucko.synapse.vault.impl;
 
+import me.lucko.synapse.generic.ContextSet;
 import me.lucko.synapse.generic.future.CompletedFutureResult;
 import me.lucko.synapse.permission.PermissionService;
 import me.lucko.synapse.permission.context.Context;
@@ -39,11 +40,10 @@ import net.milkbowl.vault.permission.Permission;
 
 import org.bukkit.entity.Player;
 
-import java.util.Arrays;
 import java.util.Collection;
 import java.util.Set;
 import java.util.UUID;
-import java.util.stream.Collectors;
+import java.util.concurrent.TimeUnit;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
@@ -51,10 +51,20 @@ import javax.annotation.Nullable;
 public class VaultPermissionService implements PermissionService {
     final Permission vaultPerms;
     final Chat vaultChat;
+    final VaultWriteExecutor writes;
+    private final VaultUserRegistry users;
+    private final VaultGroupRegistry groups;
 
     public VaultPermissionService(Permission vaultPerms, Chat vaultChat) {
+        this(vaultPerms, vaultChat, VaultWriteExecutor.SYNC, 30, TimeUnit.SECONDS);
+    }
+
+    public VaultPermissionService(Permission vaultPerms, Chat vaultChat, VaultWriteExecutor writes, long groupRefreshInterval, TimeUnit unit) {
         this.vaultPerms = vaultPerms;
         this.vaultChat = vaultChat;
+        this.writes = writes;
+        this.users = new VaultUserRegistry(this);
+        this.groups = new VaultGroupRegistry(this, groupRefreshInterval, unit);
     }
 
     public Permission getVaultPerms() {
@@ -65,6 +75,14 @@ public class VaultPermissionService implements PermissionService {
         return vaultChat;
     }
 
+    public VaultUserRegistry getUserRegistry() {
+        return users;
+    }
+
+    public VaultGroupRegistry getGroupRegistry() {
+        return groups;
+    }
+
     @Nonnull
     @Override
     public String getProviderName() {
@@ -79,13 +97,13 @@ public class VaultPermissionService implements PermissionService {
     @Nonnull
     @Override
     public User getUser(@Nonnull Player player) {
-        return new VaultUser(this, player.getUniqueId());
+        return users.get(player);
     }
 
     @Nullable
     @Override
     public User getUser(@Nonnull UUID uniqueId) {
-        return new VaultUser(this, uniqueId);
+        return users.get(uniqueId);
     }
 
     @Nonnull
@@ -97,14 +115,32 @@ public class VaultPermissionService implements PermissionService {
     @Nonnull
     @Override
     public Collection<Group> getGroups() {
-        String[] groups = vaultPerms.getGroups();
-        return Arrays.stream(groups).map(this::getGroup).collect(Collectors.toList());
+        return groups.getAll();
     }
 
     @Nullable
     @Override
     public Group getGroup(@Nonnull String name) {
-        return new VaultGroup(this, name);
+        // Vault returns null for players without a primary group
+        if (name == null) {
+            return null;
+        }
+        return groups.get(name);
+    }
+
+    /**
+     * Gets a group whose name was returned by the Vault implementation.
+     *
+     * @param name the name, or null
+     * @return the group, or null if the name is null
+     */
+    @Nullable
+    Group getProvidedGroup(@Nullable String name) {
+        // Vault returns null for players without a primary group
+        if (name == null) {
+            return null;
+        }
+        return groups.getOrCreate(name);
     }
 
     @Nonnull
@@ -131,10 +167,24 @@ public class VaultPermissionService implements PermissionService {
             throw new IllegalArgumentException("Key not supported: " + key);
         }
 
-        return new VaultWorldContext(value);
+        return VaultWorldContext.of(value);
     }
 
     public static String getWorld(Set<Context> contexts) {
+        if (contexts instanceof ContextSet) {
+            ContextSet set = (ContextSet) contexts;
+            if (set.isWorldOnly()) {
+                Context world = set.getWorldContext();
+                if (world == null) {
+                    return null;
+                }
+                if (world instanceof VaultWorldContext) {
+                    return world.getValue();
+                }
+                // otherwise fall through to reject the context below
+            }
+        }
+
         String world = null;
         for (Context context : contexts) {
             if (!(context instanceof VaultWorldContext)) {
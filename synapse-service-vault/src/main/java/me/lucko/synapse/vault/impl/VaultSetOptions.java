@@ -25,10 +25,10 @@
 
 package me.lucko.synapse.vault.impl;
 
+import me.lucko.synapse.generic.ContextSet;
 import me.lucko.synapse.permission.context.Context;
 import me.lucko.synapse.permission.options.SetOptions;
 
-import java.util.Collections;
 import java.util.Set;
 
 import javax.annotation.Nonnull;
@@ -111,9 +111,9 @@ public class VaultSetOptions implements SetOptions {
     @Override
     public Set<Context> getContexts() {
         if (world == null) {
-            return Collections.emptySet();
+            return ContextSet.empty();
         } else {
-            return Collections.singleton(new VaultWorldContext(world));
+            return ContextSet.of(VaultWorldContext.of(world));
         }
     }
 }
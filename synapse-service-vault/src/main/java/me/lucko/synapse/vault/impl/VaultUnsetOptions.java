@@ -25,10 +25,10 @@
 
 package me.lucko.synapse.vault.impl;
 
+import me.lucko.synapse.generic.ContextSet;
 import me.lucko.synapse.permission.context.Context;
 import me.lucko.synapse.permission.options.UnsetOptions;
 
-import java.util.Collections;
 import java.util.Set;
 
 import javax.annotation.Nonnull;
@@ -46,6 +46,10 @@ public class VaultUnsetOptions implements UnsetOptions {
         this.world = world;
     }
 
+    public String getWorld() {
+        return world;
+    }
+
     @Override
     public boolean supportsExpiry() {
         return false;
@@ -96,6 +100,6 @@ public class VaultUnsetOptions implements UnsetOptions {
             throw new IllegalStateException();
         }
 
-        return Collections.singleton(new VaultWorldContext(world));
+        return ContextSet.of(VaultWorldContext.of(world));
     }
 }
@@ -30,7 +30,6 @@ import com.google.common.collect.ImmutableList;
 import me.lucko.synapse.generic.AbstractSubject;
 import me.lucko.synapse.generic.SimpleGroupMembership;
 import me.lucko.synapse.generic.SimplePermissionNode;
-import me.lucko.synapse.generic.future.CompletedFutureAction;
 import me.lucko.synapse.permission.context.Context;
 import me.lucko.synapse.permission.membership.GroupMembership;
 import me.lucko.synapse.permission.node.PermissionNode;
@@ -51,32 +50,74 @@ import java.util.Collections;
 import java.util.Objects;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.stream.Collectors;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 
 public class VaultUser extends AbstractSubject implements User {
+    // how long a permission snapshot is used before it is checked against the player again
+    private static final long PERMISSIONS_EXPIRY = TimeUnit.SECONDS.toNanos(1);
+
     private final VaultPermissionService service;
     private final UUID uuid;
 
+    // the resolved player, or null if it needs to be looked up again
+    private final AtomicReference<OfflinePlayer> player = new AtomicReference<>();
+    // the world the player is in, or null if they are offline
+    private volatile String world = null;
+    // the time the player went offline, or 0 if they are online
+    private volatile long offlineSince;
+    // the last snapshot of the player's effective permissions
+    private volatile PermissionSnapshot permissions = null;
+
     public VaultUser(VaultPermissionService service, UUID uuid) {
         super(service);
         this.service = service;
         this.uuid = uuid;
+        this.offlineSince = System.currentTimeMillis();
+    }
+
+    void attach(Player player) {
+        this.player.set(player);
+        this.world = player.getWorld().getName();
+        this.offlineSince = 0L;
+        // permissions are recalculated on join and when changing world
+        this.permissions = null;
+    }
+
+    void detach(long time) {
+        this.player.set(null);
+        this.world = null;
+        this.permissions = null;
+        this.offlineSince = time;
+    }
+
+    boolean isAttached(Player player) {
+        return this.player.get() == player;
+    }
+
+    long getOfflineSince() {
+        return offlineSince;
     }
 
     private OfflinePlayer player() {
-        return Objects.requireNonNull(Bukkit.getOfflinePlayer(uuid), "player is null");
+        OfflinePlayer player = this.player.get();
+        if (player == null) {
+            player = Objects.requireNonNull(Bukkit.getOfflinePlayer(uuid), "player is null");
+            if (!this.player.compareAndSet(null, player)) {
+                return this.player.get();
+            }
+        }
+        return player;
     }
 
     private String currentWorld() {
-        OfflinePlayer player = player();
-        if (!player.isOnline()) {
-            return null;
-        } else {
-            return player.getPlayer().getWorld().getName();
-        }
+        return world;
     }
 
     @Nonnull
@@ -94,13 +135,13 @@ public class VaultUser extends AbstractSubject implements User {
     @Nullable
     @Override
     public Group getPrimaryGroup() {
-        return service.getGroup(service.vaultPerms.getPrimaryGroup(null, player()));
+        return service.getProvidedGroup(service.vaultPerms.getPrimaryGroup(null, player()));
     }
 
     @Nullable
     @Override
     public Group getPrimaryGroup(Set<Context> contexts) {
-        return service.getGroup(service.vaultPerms.getPrimaryGroup(VaultPermissionService.getWorld(contexts), player()));
+        return service.getProvidedGroup(service.vaultPerms.getPrimaryGroup(VaultPermissionService.getWorld(contexts), player()));
     }
 
     @Nonnull
@@ -111,13 +152,22 @@ public class VaultUser extends AbstractSubject implements User {
             return Collections.emptyList();
         }
 
-        Player p = player.getPlayer();
-        ImmutableList.Builder<PermissionNode> nodes = ImmutableList.builder();
-        for (PermissionAttachmentInfo pai : p.getEffectivePermissions()) {
-            nodes.add(new SimplePermissionNode(pai.getPermission(), pai.getValue(), Collections.emptySet()));
+        // getEffectivePermissions copies the player's permissions, so only
+        // call it once the snapshot is old enough to need checking
+        long now = System.nanoTime();
+        PermissionSnapshot snapshot = this.permissions;
+        if (snapshot != null && now - snapshot.verified < PERMISSIONS_EXPIRY) {
+            return snapshot.nodes;
         }
 
-        return nodes.build();
+        Set<PermissionAttachmentInfo> effective = player.getPlayer().getEffectivePermissions();
+        if (snapshot != null && snapshot.matches(effective)) {
+            snapshot.verified = now;
+        } else {
+            snapshot = new PermissionSnapshot(effective, now);
+            this.permissions = snapshot;
+        }
+        return snapshot.nodes;
     }
 
     @Nonnull
@@ -125,9 +175,8 @@ public class VaultUser extends AbstractSubject implements User {
     public Collection<GroupMembership> getGroups() {
         String[] groups = service.vaultPerms.getPlayerGroups(null, player());
         return Arrays.stream(groups)
-                .map(service::getGroup)
-                .filter(Objects::nonNull)
-                .map(g -> new SimpleGroupMembership(g, Collections.emptySet()))
+                .map(service::getProvidedGroup)
+                .map(g -> SimpleGroupMembership.of(g))
                 .collect(Collectors.toSet());
     }
 
@@ -145,32 +194,42 @@ public class VaultUser extends AbstractSubject implements User {
     @Override
     public FutureAction setPermission(@Nonnull String permission, @Nonnull SetOptions options) {
         VaultSetOptions opts = (VaultSetOptions) options;
-        service.vaultPerms.playerAdd(opts.getWorld(), player(), permission);
-        return CompletedFutureAction.INSTANCE;
+        OfflinePlayer player = player();
+        return permissionsWritten(service.writes.submit(uuid, () -> service.vaultPerms.playerAdd(opts.getWorld(), player, permission)));
     }
 
     @Nonnull
     @Override
     public FutureAction unsetPermission(@Nonnull String permission, @Nonnull UnsetOptions options) {
-        VaultSetOptions opts = (VaultSetOptions) options;
-        service.vaultPerms.playerRemove(opts.getWorld(), player(), permission);
-        return CompletedFutureAction.INSTANCE;
+        VaultUnsetOptions opts = (VaultUnsetOptions) options;
+        OfflinePlayer player = player();
+        return permissionsWritten(service.writes.submit(uuid, () -> service.vaultPerms.playerRemove(opts.getWorld(), player, permission)));
     }
 
     @Nonnull
     @Override
     public FutureAction addGroup(@Nonnull Group group, @Nonnull SetOptions options) {
         VaultSetOptions opts = (VaultSetOptions) options;
-        service.vaultPerms.playerAddGroup(opts.getWorld(), player(), group.getName());
-        return CompletedFutureAction.INSTANCE;
+        OfflinePlayer player = player();
+        return permissionsWritten(service.writes.submit(uuid, () -> service.vaultPerms.playerAddGroup(opts.getWorld(), player, group.getName())));
     }
 
     @Nonnull
     @Override
     public FutureAction removeGroup(@Nonnull Group group, @Nonnull UnsetOptions options) {
-        VaultSetOptions opts = (VaultSetOptions) options;
-        service.vaultPerms.playerRemoveGroup(opts.getWorld(), player(), group.getName());
-        return CompletedFutureAction.INSTANCE;
+        VaultUnsetOptions opts = (VaultUnsetOptions) options;
+        OfflinePlayer player = player();
+        return permissionsWritten(service.writes.submit(uuid, () -> service.vaultPerms.playerRemoveGroup(opts.getWorld(), player, group.getName())));
+    }
+
+    private FutureAction permissionsWritten(FutureAction action) {
+        this.permissions = null;
+        // the write may be made asynchronously, so drop the snapshot again once it has been
+        Future<Void> future = action.asFuture();
+        if (future instanceof CompletableFuture) {
+            ((CompletableFuture<Void>) future).whenComplete((v, t) -> this.permissions = null);
+        }
+        return action;
     }
 
     @Nullable
@@ -213,24 +272,63 @@ public class VaultUser extends AbstractSubject implements User {
     @Override
     public FutureAction setPrefix(@Nullable String prefix, @Nonnull SetOptions options) {
         VaultSetOptions opts = (VaultSetOptions) options;
-        service.vaultChat.setPlayerPrefix(opts.getWorld(), player(), prefix);
-        return CompletedFutureAction.INSTANCE;
+        OfflinePlayer player = player();
+        return service.writes.submit(uuid, () -> service.vaultChat.setPlayerPrefix(opts.getWorld(), player, prefix));
     }
 
     @Nonnull
     @Override
     public FutureAction setSuffix(@Nullable String suffix, @Nonnull SetOptions options) {
         VaultSetOptions opts = (VaultSetOptions) options;
-        service.vaultChat.setPlayerSuffix(opts.getWorld(), player(), suffix);
-        return CompletedFutureAction.INSTANCE;
+        OfflinePlayer player = player();
+        return service.writes.submit(uuid, () -> service.vaultChat.setPlayerSuffix(opts.getWorld(), player, suffix));
     }
 
     @Nonnull
     @Override
     public FutureAction setMetadata(@Nonnull String key, @Nullable String value, @Nonnull SetOptions options) {
         VaultSetOptions opts = (VaultSetOptions) options;
-        service.vaultChat.setPlayerInfoString(opts.getWorld(), player(), key, value);
-        return CompletedFutureAction.INSTANCE;
+        OfflinePlayer player = player();
+        return service.writes.submit(uuid, () -> service.vaultChat.setPlayerInfoString(opts.getWorld(), player, key, value));
+    }
+
+    /**
+     * An immutable view of a player's effective permissions.
+     *
+     * <p>Bukkit replaces every {@link PermissionAttachmentInfo} when a player's
+     * permissions are recalculated, so the snapshot is still current as long
+     * as the player has the exact same instances. As getting them makes a
+     * copy, they are only compared once the snapshot is
+     * {@link #PERMISSIONS_EXPIRY} old.</p>
+     */
+    private static final class PermissionSnapshot {
+        private final PermissionAttachmentInfo[] source;
+        private final ImmutableList<PermissionNode> nodes;
+        // when the snapshot was last known to be current
+        private volatile long verified;
+
+        PermissionSnapshot(Set<PermissionAttachmentInfo> effective, long verified) {
+            this.source = effective.toArray(new PermissionAttachmentInfo[0]);
+            ImmutableList.Builder<PermissionNode> nodes = ImmutableList.builder();
+            for (PermissionAttachmentInfo pai : this.source) {
+                nodes.add(SimplePermissionNode.of(pai.getPermission(), pai.getValue()));
+            }
+            this.nodes = nodes.build();
+            this.verified = verified;
+        }
+
+        boolean matches(Set<PermissionAttachmentInfo> effective) {
+            if (effective.size() != source.length) {
+                return false;
+            }
+            int i = 0;
+            for (PermissionAttachmentInfo pai : effective) {
+                if (pai != source[i++]) {
+                    return false;
+                }
+            }
+            return true;
+        }
     }
 
 }
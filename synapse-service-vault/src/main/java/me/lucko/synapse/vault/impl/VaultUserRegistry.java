@@ -0,0 +1,114 @@
+/*
+ * This file is part of synapse, licensed under the MIT License.
+ *
+ *  Copyright (c) lucko (Luck) <luck@lucko.me>
+ *  Copyright (c) contributors
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package me.lucko.synapse.vault.impl;
+
+import org.bukkit.Bukkit;
+import org.bukkit.entity.Player;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Holds a {@link VaultUser} handle for each user the service has been asked
+ * about, so repeated lookups return the same instance.
+ *
+ * <p>Handles for online players hold the {@link Player} and their current
+ * world, and are kept up to date by the registrar. Handles for offline users
+ * are evicted once they have been offline for longer than the grace period.</p>
+ */
+public class VaultUserRegistry {
+    private static final long GRACE_PERIOD = TimeUnit.MINUTES.toMillis(5);
+
+    private final Map<UUID, VaultUser> handles = new ConcurrentHashMap<>();
+    private final Function<UUID, VaultUser> factory;
+
+    VaultUserRegistry(VaultPermissionService service) {
+        this.factory = uuid -> {
+            VaultUser user = new VaultUser(service, uuid);
+            Player player = Bukkit.getPlayer(uuid);
+            if (player != null) {
+                user.attach(player);
+            }
+            return user;
+        };
+    }
+
+    public VaultUser get(UUID uuid) {
+        VaultUser user = handles.get(uuid);
+        if (user == null) {
+            user = handles.computeIfAbsent(uuid, factory);
+        }
+        return user;
+    }
+
+    public VaultUser get(Player player) {
+        VaultUser user = get(player.getUniqueId());
+        if (!user.isAttached(player)) {
+            user.attach(player);
+        }
+        return user;
+    }
+
+    public void onJoin(Player player) {
+        get(player).attach(player);
+    }
+
+    public void onWorldChange(Player player) {
+        VaultUser user = handles.get(player.getUniqueId());
+        if (user != null) {
+            user.attach(player);
+        }
+    }
+
+    public void onQuit(UUID uuid) {
+        VaultUser user = handles.get(uuid);
+        if (user != null) {
+            user.detach(System.currentTimeMillis());
+        }
+    }
+
+    /**
+     * Evicts handles which have been offline for longer than the grace period.
+     */
+    public void cleanup() {
+        long cutoff = System.currentTimeMillis() - GRACE_PERIOD;
+        Iterator<VaultUser> it = handles.values().iterator();
+        while (it.hasNext()) {
+            long offlineSince = it.next().getOfflineSince();
+            if (offlineSince != 0L && offlineSince < cutoff) {
+                it.remove();
+            }
+        }
+    }
+
+    public int size() {
+        return handles.size();
+    }
+}
@@ -25,10 +25,23 @@
 
 package me.lucko.synapse.vault.impl;
 
+import me.lucko.synapse.generic.ContextInterner;
 import me.lucko.synapse.generic.SimpleContext;
 
 class VaultWorldContext extends SimpleContext {
-    VaultWorldContext(String world) {
+    private static final ContextInterner<VaultWorldContext> INTERNER = new ContextInterner<>((key, value) -> new VaultWorldContext(value));
+
+    /**
+     * Gets the canonical context for the given world.
+     *
+     * @param world the world
+     * @return the context
+     */
+    static VaultWorldContext of(String world) {
+        return INTERNER.intern("world", world);
+    }
+
+    private VaultWorldContext(String world) {
         super("world", world);
     }
 }
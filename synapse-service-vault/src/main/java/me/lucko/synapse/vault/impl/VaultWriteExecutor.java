@@ -0,0 +1,106 @@
+/*
+ * This file is part of synapse, licensed under the MIT License.
+ *
+ *  Copyright (c) lucko (Luck) <luck@lucko.me>
+ *  Copyright (c) contributors
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package me.lucko.synapse.vault.impl;
+
+import me.lucko.synapse.generic.future.CompletableFutureAction;
+import me.lucko.synapse.generic.future.CompletedFutureAction;
+import me.lucko.synapse.util.FutureAction;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs writes made to the underlying Vault implementation.
+ *
+ * <p>In synchronous mode, writes are made on the calling thread. Otherwise,
+ * they are dispatched to a fixed set of single threaded executors, chosen by
+ * the subject being written to, so writes to the same subject are always
+ * applied in the order they were made.</p>
+ */
+public final class VaultWriteExecutor {
+    public static final VaultWriteExecutor SYNC = new VaultWriteExecutor(0);
+
+    private final ExecutorService[] partitions;
+
+    /**
+     * Creates a new executor.
+     *
+     * @param threads the number of threads to use, or 0 to run writes
+     *                synchronously on the calling thread
+     */
+    public VaultWriteExecutor(int threads) {
+        this.partitions = new ExecutorService[Math.max(0, threads)];
+        AtomicInteger counter = new AtomicInteger();
+        for (int i = 0; i < this.partitions.length; i++) {
+            this.partitions[i] = Executors.newSingleThreadExecutor(r -> {
+                Thread thread = new Thread(r, "synapse-vault-writer-" + counter.getAndIncrement());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    public boolean isAsync() {
+        return partitions.length != 0;
+    }
+
+    /**
+     * Runs a write against the given subject.
+     *
+     * @param subject the subject being written to
+     * @param write the write
+     * @return an action which completes when the write has been made
+     */
+    public FutureAction submit(Object subject, Runnable write) {
+        if (partitions.length == 0) {
+            write.run();
+            return CompletedFutureAction.INSTANCE;
+        }
+
+        ExecutorService executor = partitions[(subject.hashCode() & Integer.MAX_VALUE) % partitions.length];
+        return new CompletableFutureAction(CompletableFuture.runAsync(write, executor));
+    }
+
+    /**
+     * Stops accepting writes, and waits for any pending writes to be made.
+     */
+    public void shutdown() {
+        for (ExecutorService executor : partitions) {
+            executor.shutdown();
+        }
+        for (ExecutorService executor : partitions) {
+            try {
+                executor.awaitTermination(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * This file is part of synapse, licensed under the MIT License.
+ *
+ *  Copyright (c) lucko (Luck) <luck@lucko.me>
+ *  Copyright (c) contributors
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package me.lucko.synapse.vaultprovider;
+
+import me.lucko.synapse.permission.context.Context;
+import me.lucko.synapse.permission.membership.GroupMembership;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * An index of a user's group memberships, keyed by lower-cased group name
+ * and mapped to the worlds each membership applies in.
+ */
+public final class GroupMembershipIndex {
+
+    public static GroupMembershipIndex build(Collection<GroupMembership> memberships) {
+        Map<String, Scope> groups = new HashMap<>();
+        for (GroupMembership membership : memberships) {
+            String name = membership.getGroup().getName();
+            Scope scope = groups.computeIfAbsent(name.toLowerCase(Locale.ROOT), n -> new Scope());
+            scope.add(membership.getRequiredContext());
+            groups.putIfAbsent(name, scope);
+        }
+        return new GroupMembershipIndex(groups);
+    }
+
+    private final Map<String, Scope> groups;
+
+    private GroupMembershipIndex(Map<String, Scope> groups) {
+        this.groups = groups;
+    }
+
+    public boolean isMember(String group, String world) {
+        Scope scope = groups.get(group);
+        if (scope == null) {
+            scope = groups.get(group.toLowerCase(Locale.ROOT));
+            if (scope == null) {
+                return false;
+            }
+        }
+        return scope.global || (world != null && scope.worlds.contains(world));
+    }
+
+    private static final class Scope {
+        private final Set<String> worlds = new HashSet<>();
+        private boolean global = false;
+
+        private void add(Set<Context> contexts) {
+            String world = null;
+            for (Context context : contexts) {
+                if (!context.getKey().equals("world")) {
+                    continue;
+                }
+                if (world != null && !world.equals(context.getValue())) {
+                    return; // requires two different worlds, can never apply
+                }
+                world = context.getValue();
+            }
+
+            if (world == null) {
+                global = true;
+            } else {
+                worlds.add(world);
+            }
+        }
+    }
+}
@@ -0,0 +1,148 @@
+/*
+ * This file is part of synapse, licensed under the MIT License.
+ *
+ *  Copyright (c) lucko (Luck) <luck@lucko.me>
+ *  Copyright (c) contributors
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package me.lucko.synapse.vaultprovider;
+
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * Caches permission check results, keyed by (player, world, permission).
+ *
+ * <p>Each player's {@link Entry} also holds an index of their group
+ * memberships. A new entry is created whenever the player's data is
+ * invalidated, so anything held by an entry is built at most once per
+ * version of the player's data.</p>
+ */
+public class PermissionDecisionCache {
+    private static final int CLEANUP_THRESHOLD = 1000;
+    private static final String GLOBAL = "";
+
+    private final int maxEntriesPerUser;
+    private final long expireAfterNanos;
+
+    private final Map<UUID, Entry> users = new ConcurrentHashMap<>();
+    private final Function<UUID, Entry> entryFactory = uuid -> new Entry();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    public PermissionDecisionCache(int maxEntriesPerUser, long expireAfter, TimeUnit unit) {
+        this.maxEntriesPerUser = maxEntriesPerUser;
+        this.expireAfterNanos = unit.toNanos(expireAfter);
+    }
+
+    /**
+     * Gets the cache entry for the given player, creating one if necessary.
+     *
+     * @param uuid the player
+     * @return the entry
+     */
+    public Entry getEntry(UUID uuid) {
+        Entry entry = users.get(uuid);
+        if (entry != null) {
+            if (!entry.isExpired(System.nanoTime())) {
+                return entry;
+            }
+            users.remove(uuid, entry);
+        }
+
+        if (users.size() >= CLEANUP_THRESHOLD) {
+            cleanup();
+        }
+        return users.computeIfAbsent(uuid, entryFactory);
+    }
+
+    public void invalidate(UUID uuid) {
+        users.remove(uuid);
+    }
+
+    public void invalidateAll() {
+        users.clear();
+    }
+
+    public void cleanup() {
+        long now = System.nanoTime();
+        users.values().removeIf(e -> e.isExpired(now));
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public double getHitRatio() {
+        long hits = getHits();
+        long total = hits + getMisses();
+        return total == 0 ? 0 : (double) hits / total;
+    }
+
+    public final class Entry {
+        private final long created = System.nanoTime();
+        private final Map<String, Map<String, Boolean>> decisions = new ConcurrentHashMap<>();
+        private final AtomicInteger size = new AtomicInteger();
+        private volatile GroupMembershipIndex memberships = null;
+
+        private boolean isExpired(long now) {
+            return now - created > expireAfterNanos;
+        }
+
+        public Boolean get(String world, String permission) {
+            Map<String, Boolean> worldDecisions = decisions.get(world == null ? GLOBAL : world);
+            Boolean result = worldDecisions == null ? null : worldDecisions.get(permission);
+            if (result == null) {
+                misses.increment();
+            } else {
+                hits.increment();
+            }
+            return result;
+        }
+
+        public void put(String world, String permission, boolean result) {
+            if (size.incrementAndGet() > maxEntriesPerUser) {
+                // over the limit - start again rather than tracking recency
+                decisions.clear();
+                size.set(1);
+            }
+            decisions.computeIfAbsent(world == null ? GLOBAL : world, w -> new ConcurrentHashMap<>()).put(permission, result);
+        }
+
+        public GroupMembershipIndex getMemberships() {
+            return memberships;
+        }
+
+        public void setMemberships(GroupMembershipIndex memberships) {
+            this.memberships = memberships;
+        }
+    }
+}
@@ -0,0 +1,219 @@
+/*
+ * This file is part of synapse, licensed under the MIT License.
+ *
+ *  Copyright (c) lucko (Luck) <luck@lucko.me>
+ *  Copyright (c) contributors
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package me.lucko.synapse.vaultprovider;
+
+import org.bukkit.OfflinePlayer;
+import org.bukkit.entity.Player;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.player.PlayerJoinEvent;
+import org.bukkit.event.player.PlayerQuitEvent;
+import org.bukkit.plugin.Plugin;
+
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Resolves player names to unique ids without blocking the caller.
+ *
+ * <p>Names are looked up in an index of online players, maintained from
+ * join/quit events, and a bounded index of other known players, populated
+ * from the server's known offline players. A miss returns {@code null} and
+ * schedules an asynchronous lookup, so that later calls for the same name
+ * can be answered from the index. Names which couldn't be resolved are
+ * remembered for a short while, so repeated calls for them don't each
+ * schedule a lookup.</p>
+ *
+ * <p>Both indexes are keyed by lower-cased name.</p>
+ */
+public class PlayerNameResolver implements Listener {
+    private static final int MAXIMUM_SIZE = 10000;
+    private static final int MAXIMUM_MISSES = 1000;
+    private static final long MISS_EXPIRY = TimeUnit.SECONDS.toNanos(30);
+
+    private final Plugin plugin;
+    private final Map<String, UUID> online = new ConcurrentHashMap<>();
+    private final Map<String, UUID> offline = new ConcurrentHashMap<>();
+    // the keys of the offline index, oldest first
+    private final Queue<String> offlineOrder = new ConcurrentLinkedQueue<>();
+    // names which couldn't be resolved, mapped to the time they expire
+    private final Map<String, Long> misses = new ConcurrentHashMap<>();
+    private final Set<String> pending = ConcurrentHashMap.newKeySet();
+
+    public PlayerNameResolver(Plugin plugin) {
+        this.plugin = plugin;
+    }
+
+    /**
+     * Populates the index with the players already known to the server.
+     */
+    public void populate() {
+        for (Player player : plugin.getServer().getOnlinePlayers()) {
+            online.put(key(player.getName()), player.getUniqueId());
+        }
+        plugin.getServer().getScheduler().runTaskAsynchronously(plugin, () -> {
+            for (OfflinePlayer player : plugin.getServer().getOfflinePlayers()) {
+                if (offline.size() >= MAXIMUM_SIZE) {
+                    break;
+                }
+
+                String name = player.getName();
+                if (name == null) {
+                    continue;
+                }
+
+                String key = key(name);
+                if (offline.putIfAbsent(key, player.getUniqueId()) == null) {
+                    offlineOrder.add(key);
+                }
+            }
+        });
+    }
+
+    /**
+     * Gets the unique id for the given player name.
+     *
+     * @param name the name
+     * @return the unique id, or null if it is not (yet) known
+     */
+    public UUID resolve(String name) {
+        if (name == null) {
+            return null;
+        }
+
+        String key = key(name);
+        UUID uuid = online.get(key);
+        if (uuid != null) {
+            return uuid;
+        }
+        uuid = offline.get(key);
+        if (uuid != null) {
+            return uuid;
+        }
+
+        Long missExpiry = misses.get(key);
+        if (missExpiry != null) {
+            if (System.nanoTime() - missExpiry < 0) {
+                return null;
+            }
+            misses.remove(key, missExpiry);
+        }
+
+        Player player = plugin.getServer().getPlayerExact(name);
+        if (player != null) {
+            online.put(key, player.getUniqueId());
+            return player.getUniqueId();
+        }
+
+        // only one lookup is made at a time for each name
+        if (pending.add(key)) {
+            plugin.getServer().getScheduler().runTaskAsynchronously(plugin, () -> {
+                try {
+                    OfflinePlayer offlinePlayer = plugin.getServer().getOfflinePlayer(name);
+                    // for players who have never joined, the server makes up
+                    // an (offline mode) unique id, which shouldn't be cached
+                    if (offlinePlayer != null && offlinePlayer.hasPlayedBefore()) {
+                        store(key, offlinePlayer.getUniqueId());
+                    } else {
+                        miss(key);
+                    }
+                } finally {
+                    pending.remove(key);
+                }
+            });
+        }
+        return null;
+    }
+
+    /**
+     * Adds a known name to unique id mapping to the index.
+     *
+     * @param name the name
+     * @param uuid the unique id
+     */
+    public void put(String name, UUID uuid) {
+        String key = key(name);
+        misses.remove(key);
+        store(key, uuid);
+    }
+
+    // evicts in insertion order, so reads don't have to take a lock
+    private void store(String key, UUID uuid) {
+        if (offline.put(key, uuid) != null) {
+            return;
+        }
+        offlineOrder.add(key);
+        while (offline.size() > MAXIMUM_SIZE) {
+            String eldest = offlineOrder.poll();
+            if (eldest == null) {
+                break;
+            }
+            offline.remove(eldest);
+        }
+    }
+
+    private void miss(String key) {
+        long now = System.nanoTime();
+        if (misses.size() >= MAXIMUM_MISSES) {
+            for (Iterator<Long> it = misses.values().iterator(); it.hasNext(); ) {
+                if (now - it.next() >= 0) {
+                    it.remove();
+                }
+            }
+            if (misses.size() >= MAXIMUM_MISSES) {
+                return;
+            }
+        }
+        misses.put(key, now + MISS_EXPIRY);
+    }
+
+    private static String key(String name) {
+        // returns the same instance if the name is already lower case
+        return name.toLowerCase(Locale.ROOT);
+    }
+
+    @EventHandler(priority = EventPriority.LOWEST)
+    public void onJoin(PlayerJoinEvent e) {
+        String key = key(e.getPlayer().getName());
+        online.put(key, e.getPlayer().getUniqueId());
+        misses.remove(key);
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onQuit(PlayerQuitEvent e) {
+        String key = key(e.getPlayer().getName());
+        online.remove(key);
+        store(key, e.getPlayer().getUniqueId());
+    }
+}
@@ -29,27 +29,52 @@ import me.lucko.synapse.permission.PermissionService;
 import me.lucko.synapse.permission.context.Context;
 import me.lucko.synapse.permission.subject.Group;
 import me.lucko.synapse.permission.subject.User;
+import me.lucko.synapse.util.FutureAction;
 
 import net.milkbowl.vault.permission.Permission;
 
-import java.util.Collections;
+import java.util.Locale;
 import java.util.Objects;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Future;
+import java.util.function.Supplier;
+
+import javax.annotation.Nullable;
 
 public class SynapseVaultChat extends UpgradedVaultChat {
+    private static final Runnable NO_OP = () -> {};
+
     final PermissionService service;
+    private final WorldContextCache worldContexts;
+    private final VaultWriteQueue writeQueue;
 
-    public SynapseVaultChat(PermissionService service, Permission perms) {
-        super(perms);
+    public SynapseVaultChat(PermissionService service, Permission perms, PlayerNameResolver resolver, WorldContextCache worldContexts, @Nullable VaultWriteQueue writeQueue, TypedMetaCache metaCache, VaultCallMetrics metrics) {
+        super(perms, resolver, metaCache, metrics);
         this.service = service;
+        this.worldContexts = worldContexts;
+        this.writeQueue = writeQueue;
     }
 
     private Set<Context> worldContext(String world) {
-        if (world == null) {
-            return Collections.emptySet();
+        return worldContexts.get(world);
+    }
+
+    /**
+     * Makes a write, either straight away or through the write queue if it
+     * is enabled.
+     */
+    private void write(Object subject, VaultWriteQueue.Type type, String node, String world, Supplier<FutureAction> write, Runnable callback) {
+        if (writeQueue != null) {
+            writeQueue.enqueue(subject, type, node, world, write, callback);
+            return;
+        }
+
+        Future<Void> future = write.get().asFuture();
+        if (future instanceof CompletableFuture) {
+            ((CompletableFuture<Void>) future).whenComplete((v, ex) -> callback.run());
         }
-        return Collections.singleton(service.createContext("world", world));
     }
 
     private static String toString(Object o) {
@@ -63,7 +88,7 @@ public class SynapseVaultChat extends UpgradedVaultChat {
 
     @Override
     public String getPlayerPrefix(String world, UUID uuid) {
-        Objects.requireNonNull(uuid, "uuid");
+        if (uuid == null) return null;
 
         User user = service.getUser(uuid);
         if (user == null) return null;
@@ -73,7 +98,7 @@ public class SynapseVaultChat extends UpgradedVaultChat {
 
     @Override
     public String getPlayerSuffix(String world, UUID uuid) {
-        Objects.requireNonNull(uuid, "uuid");
+        if (uuid == null) return null;
 
         User user = service.getUser(uuid);
         if (user == null) return null;
@@ -83,27 +108,33 @@ public class SynapseVaultChat extends UpgradedVaultChat {
 
     @Override
     public void setPlayerPrefix(String world, UUID uuid, String prefix) {
-        Objects.requireNonNull(uuid, "uuid");
+        if (uuid == null) return;
 
         User user = service.getUser(uuid);
         if (user == null) return;
 
-        user.setPrefix(prefix, service.getNormalSetOptions().withContexts(worldContext(world)));
+        write(uuid, VaultWriteQueue.Type.PREFIX, null, world,
+                () -> user.setPrefix(prefix, service.getNormalSetOptions().withContexts(worldContext(world))),
+                NO_OP
+        );
     }
 
     @Override
     public void setPlayerSuffix(String world, UUID uuid, String prefix) {
-        Objects.requireNonNull(uuid, "uuid");
+        if (uuid == null) return;
 
         User user = service.getUser(uuid);
         if (user == null) return;
 
-        user.setSuffix(prefix, service.getNormalSetOptions().withContexts(worldContext(world)));
+        write(uuid, VaultWriteQueue.Type.SUFFIX, null, world,
+                () -> user.setSuffix(prefix, service.getNormalSetOptions().withContexts(worldContext(world))),
+                NO_OP
+        );
     }
 
     @Override
     public String getPlayerInfo(String world, UUID uuid, String key) {
-        Objects.requireNonNull(uuid, "uuid");
+        if (uuid == null) return null;
         Objects.requireNonNull(key, "key");
 
         User user = service.getUser(uuid);
@@ -114,13 +145,18 @@ public class SynapseVaultChat extends UpgradedVaultChat {
 
     @Override
     public void setPlayerInfo(String world, UUID uuid, String key, Object value) {
-        Objects.requireNonNull(uuid, "uuid");
+        if (uuid == null) return;
         Objects.requireNonNull(key, "key");
 
         User user = service.getUser(uuid);
         if (user == null) return;
 
-        user.setMetadata(key, toString(value), service.getNormalSetOptions().withContexts(worldContext(world)));
+        String str = toString(value);
+        getMetaCache().invalidate(uuid);
+        write(uuid, VaultWriteQueue.Type.METADATA, key, world,
+                () -> user.setMetadata(key, str, service.getNormalSetOptions().withContexts(worldContext(world))),
+                () -> getMetaCache().invalidate(uuid)
+        );
     }
 
     @Override
@@ -150,7 +186,10 @@ public class SynapseVaultChat extends UpgradedVaultChat {
         Group g = service.getGroup(group);
         if (g == null) return;
 
-        g.setPrefix(prefix, service.getNormalSetOptions().withContexts(worldContext(world)));
+        write(g.getName().toLowerCase(Locale.ROOT), VaultWriteQueue.Type.PREFIX, null, world,
+                () -> g.setPrefix(prefix, service.getNormalSetOptions().withContexts(worldContext(world))),
+                NO_OP
+        );
     }
 
     @Override
@@ -160,7 +199,10 @@ public class SynapseVaultChat extends UpgradedVaultChat {
         Group g = service.getGroup(group);
         if (g == null) return;
 
-        g.setSuffix(prefix, service.getNormalSetOptions().withContexts(worldContext(world)));
+        write(g.getName().toLowerCase(Locale.ROOT), VaultWriteQueue.Type.SUFFIX, null, world,
+                () -> g.setSuffix(prefix, service.getNormalSetOptions().withContexts(worldContext(world))),
+                NO_OP
+        );
     }
 
     @Override
@@ -182,6 +224,12 @@ public class SynapseVaultChat extends UpgradedVaultChat {
         Group g = service.getGroup(group);
         if (g == null) return;
 
-        g.setMetadata(key, toString(value), service.getNormalSetOptions().withContexts(worldContext(world)));
+        String str = toString(value);
+        // players inherit group metadata, so their cached values are stale too
+        getMetaCache().invalidateAll();
+        write(g.getName().toLowerCase(Locale.ROOT), VaultWriteQueue.Type.METADATA, key, world,
+                () -> g.setMetadata(key, str, service.getNormalSetOptions().withContexts(worldContext(world))),
+                () -> getMetaCache().invalidateAll()
+        );
     }
 }
@@ -27,26 +27,145 @@ package me.lucko.synapse.vaultprovider;
 
 import me.lucko.synapse.permission.PermissionService;
 import me.lucko.synapse.permission.context.Context;
+import me.lucko.synapse.permission.membership.GroupMembership;
 import me.lucko.synapse.permission.subject.Group;
 import me.lucko.synapse.permission.subject.User;
+import me.lucko.synapse.util.FutureAction;
 
-import java.util.Collections;
+import net.milkbowl.vault.permission.Permission;
+
+import org.bukkit.plugin.Plugin;
+import org.bukkit.plugin.java.JavaPlugin;
+
+import java.util.Collection;
+import java.util.Locale;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import javax.annotation.Nullable;
 
 public class SynapseVaultPermission extends UpgradedVaultPermission {
+    private static final int MAX_MEMBERSHIP_INDEXES = 1000;
+    // how long a membership index is used for when the decision cache is
+    // disabled, to pick up changes made other than through Vault
+    private static final long MEMBERSHIP_INDEX_EXPIRY = TimeUnit.SECONDS.toNanos(1);
+
     final PermissionService service;
+    private final WorldContextCache worldContexts;
+    private final VaultWriteQueue writeQueue;
+    private final PermissionDecisionCache decisionCache;
+    private final TypedMetaCache metaCache;
+    // membership indexes used when the decision cache is disabled, dropped
+    // when the player is invalidated
+    private final Map<UUID, IndexedMemberships> membershipIndexes = new ConcurrentHashMap<>();
+
+    public SynapseVaultPermission(PermissionService service, PlayerNameResolver resolver, WorldContextCache worldContexts, @Nullable VaultWriteQueue writeQueue, @Nullable PermissionDecisionCache decisionCache, @Nullable TypedMetaCache metaCache, VaultCallMetrics metrics) {
+        this(JavaPlugin.getProvidingPlugin(Permission.class), service, resolver, worldContexts, writeQueue, decisionCache, metaCache, metrics);
+    }
 
-    public SynapseVaultPermission(PermissionService service) {
+    public SynapseVaultPermission(Plugin vaultPlugin, PermissionService service, PlayerNameResolver resolver, WorldContextCache worldContexts, @Nullable VaultWriteQueue writeQueue, @Nullable PermissionDecisionCache decisionCache, @Nullable TypedMetaCache metaCache, VaultCallMetrics metrics) {
+        super(vaultPlugin, resolver, metrics);
         this.service = service;
+        this.worldContexts = worldContexts;
+        this.writeQueue = writeQueue;
+        this.decisionCache = decisionCache;
+        this.metaCache = metaCache;
+    }
+
+    @Nullable
+    public PermissionDecisionCache getDecisionCache() {
+        return decisionCache;
+    }
+
+    /**
+     * Invalidates any cached permission checks for the given player.
+     *
+     * @param uuid the player
+     */
+    public void invalidate(UUID uuid) {
+        membershipIndexes.remove(uuid);
+        if (decisionCache != null) {
+            decisionCache.invalidate(uuid);
+        }
+    }
+
+    /**
+     * Invalidates all cached permission checks.
+     */
+    public void invalidateAll() {
+        membershipIndexes.clear();
+        if (decisionCache != null) {
+            decisionCache.invalidateAll();
+        }
+    }
+
+    private void invalidateOnComplete(FutureAction action, UUID uuid) {
+        invalidate(uuid);
+        Future<Void> future = action.asFuture();
+        if (future instanceof CompletableFuture) {
+            ((CompletableFuture<Void>) future).whenComplete((v, ex) -> invalidate(uuid));
+        }
+    }
+
+    private void invalidateAllOnComplete(FutureAction action) {
+        invalidateAll();
+        Future<Void> future = action.asFuture();
+        if (future instanceof CompletableFuture) {
+            ((CompletableFuture<Void>) future).whenComplete((v, ex) -> invalidateAll());
+        }
+    }
+
+    /**
+     * Makes a write to a player, either straight away or through the write
+     * queue if it is enabled.
+     */
+    private void writeUser(UUID uuid, VaultWriteQueue.Type type, String node, String world, Supplier<FutureAction> write) {
+        if (type == VaultWriteQueue.Type.GROUP && metaCache != null) {
+            // metadata can be inherited from groups, so a change of membership
+            // makes the player's cached values stale too
+            metaCache.invalidate(uuid);
+            write = onComplete(write, () -> metaCache.invalidate(uuid));
+        }
+
+        if (writeQueue == null) {
+            invalidateOnComplete(write.get(), uuid);
+            return;
+        }
+
+        invalidate(uuid);
+        writeQueue.enqueue(uuid, type, node, world, write, () -> invalidate(uuid));
     }
 
-    private Set<Context> worldContext(String world) {
-        if (world == null) {
-            return Collections.emptySet();
+    private static Supplier<FutureAction> onComplete(Supplier<FutureAction> write, Runnable callback) {
+        return () -> {
+            FutureAction action = write.get();
+            Future<Void> future = action.asFuture();
+            if (future instanceof CompletableFuture) {
+                ((CompletableFuture<Void>) future).whenComplete((v, ex) -> callback.run());
+            }
+            return action;
+        };
+    }
+
+    /**
+     * Makes a write to a group, either straight away or through the write
+     * queue if it is enabled.
+     */
+    private void writeGroup(Group group, VaultWriteQueue.Type type, String node, String world, Supplier<FutureAction> write) {
+        if (writeQueue == null) {
+            invalidateAllOnComplete(write.get());
+            return;
         }
-        return Collections.singleton(service.createContext("world", world));
+
+        invalidateAll();
+        writeQueue.enqueue(group.getName().toLowerCase(Locale.ROOT), type, node, world, write, this::invalidateAll);
     }
 
     @Override
@@ -56,53 +175,112 @@ public class SynapseVaultPermission extends UpgradedVaultPermission {
 
     @Override
     public boolean hasPermission(String world, UUID uuid, String permission) {
-        Objects.requireNonNull(uuid, "uuid");
+        if (uuid == null) return false;
         Objects.requireNonNull(permission, "permission");
 
+        if (decisionCache == null) {
+            User user = service.getUser(uuid);
+            if (user == null) return false;
+
+            return user.checkPermission(permission, worldContext(world));
+        }
+
+        PermissionDecisionCache.Entry entry = decisionCache.getEntry(uuid);
+        Boolean cached = entry.get(world, permission);
+        if (cached != null) {
+            return cached;
+        }
+
         User user = service.getUser(uuid);
         if (user == null) return false;
 
-        return user.checkPermission(permission, worldContext(world));
+        boolean result = user.checkPermission(permission, worldContext(world));
+        entry.put(world, permission, result);
+        return result;
     }
 
     @Override
     public boolean playerAddPermission(String world, UUID uuid, String permission) {
-        Objects.requireNonNull(uuid, "uuid");
+        if (uuid == null) return false;
         Objects.requireNonNull(permission, "permission");
 
         User user = service.getUser(uuid);
         if (user == null) return false;
 
-        user.setPermission(permission, service.getNormalSetOptions().withContexts(worldContext(world)));
+        writeUser(uuid, VaultWriteQueue.Type.PERMISSION, permission, world,
+                () -> user.setPermission(permission, service.getNormalSetOptions().withContexts(worldContext(world)))
+        );
         return true;
     }
 
     @Override
     public boolean playerRemovePermission(String world, UUID uuid, String permission) {
-        Objects.requireNonNull(uuid, "uuid");
+        if (uuid == null) return false;
         Objects.requireNonNull(permission, "permission");
 
         User user = service.getUser(uuid);
         if (user == null) return false;
 
-        user.unsetPermission(permission, service.getNormalUnsetOptions().withContexts(worldContext(world)));
+        writeUser(uuid, VaultWriteQueue.Type.PERMISSION, permission, world,
+                () -> user.unsetPermission(permission, service.getNormalUnsetOptions().withContexts(worldContext(world)))
+        );
         return true;
     }
 
     @Override
     public boolean playerInGroup(String world, UUID uuid, String group) {
-        Objects.requireNonNull(uuid, "uuid");
+        if (uuid == null) return false;
         Objects.requireNonNull(group, "group");
 
+        if (decisionCache == null) {
+            GroupMembershipIndex memberships = getMembershipIndex(uuid);
+            return memberships != null && memberships.isMember(group, world);
+        }
+
+        PermissionDecisionCache.Entry entry = decisionCache.getEntry(uuid);
+        GroupMembershipIndex memberships = entry.getMemberships();
+        if (memberships == null) {
+            User user = service.getUser(uuid);
+            if (user == null) return false;
+
+            memberships = GroupMembershipIndex.build(user.getGroups());
+            entry.setMemberships(memberships);
+        }
+        return memberships.isMember(group, world);
+    }
+
+    /**
+     * Gets the membership index for the given player, building it if there
+     * is no current one.
+     *
+     * <p>Like the decision cache entries, an index is used until the player
+     * is invalidated (by a write through Vault, or when they quit), or it
+     * expires.</p>
+     *
+     * @return the index, or null if the user doesn't exist
+     */
+    @Nullable
+    private GroupMembershipIndex getMembershipIndex(UUID uuid) {
+        long now = System.nanoTime();
+        IndexedMemberships indexed = membershipIndexes.get(uuid);
+        if (indexed != null && now - indexed.created <= MEMBERSHIP_INDEX_EXPIRY) {
+            return indexed.index;
+        }
+
         User user = service.getUser(uuid);
-        if (user == null) return false;
+        if (user == null) return null;
 
-        return user.getGroups().stream().anyMatch(m -> m.getGroup().getName().equalsIgnoreCase(group));
+        if (membershipIndexes.size() >= MAX_MEMBERSHIP_INDEXES) {
+            membershipIndexes.values().removeIf(i -> now - i.created > MEMBERSHIP_INDEX_EXPIRY);
+        }
+        indexed = new IndexedMemberships(now, GroupMembershipIndex.build(user.getGroups()));
+        membershipIndexes.put(uuid, indexed);
+        return indexed.index;
     }
 
     @Override
     public boolean playerAddGroup(String world, UUID uuid, String group) {
-        Objects.requireNonNull(uuid, "uuid");
+        if (uuid == null) return false;
         Objects.requireNonNull(group, "group");
 
         User user = service.getUser(uuid);
@@ -111,13 +289,15 @@ public class SynapseVaultPermission extends UpgradedVaultPermission {
         Group g = service.getGroup(group);
         if (g == null) return false;
 
-        user.addGroup(g, service.getNormalSetOptions().withContexts(worldContext(world)));
+        writeUser(uuid, VaultWriteQueue.Type.GROUP, g.getName().toLowerCase(Locale.ROOT), world,
+                () -> user.addGroup(g, service.getNormalSetOptions().withContexts(worldContext(world)))
+        );
         return true;
     }
 
     @Override
     public boolean playerRemoveGroup(String world, UUID uuid, String group) {
-        Objects.requireNonNull(uuid, "uuid");
+        if (uuid == null) return false;
         Objects.requireNonNull(group, "group");
 
         User user = service.getUser(uuid);
@@ -126,23 +306,31 @@ public class SynapseVaultPermission extends UpgradedVaultPermission {
         Group g = service.getGroup(group);
         if (g == null) return false;
 
-        user.removeGroup(g, service.getNormalUnsetOptions().withContexts(worldContext(world)));
+        writeUser(uuid, VaultWriteQueue.Type.GROUP, g.getName().toLowerCase(Locale.ROOT), world,
+                () -> user.removeGroup(g, service.getNormalUnsetOptions().withContexts(worldContext(world)))
+        );
         return true;
     }
 
     @Override
     public String[] playerGetGroups(String world, UUID uuid) {
-        Objects.requireNonNull(uuid, "uuid");
+        if (uuid == null) return new String[0];
 
         User user = service.getUser(uuid);
         if (user == null) return new String[0];
 
-        return user.getGroups().stream().map(m -> m.getGroup().getName()).toArray(String[]::new);
+        Collection<GroupMembership> memberships = user.getGroups();
+        String[] groups = new String[memberships.size()];
+        int i = 0;
+        for (GroupMembership membership : memberships) {
+            groups[i++] = membership.getGroup().getName();
+        }
+        return groups;
     }
 
     @Override
     public String playerPrimaryGroup(String world, UUID uuid) {
-        Objects.requireNonNull(uuid, "uuid");
+        if (uuid == null) return null;
 
         User user = service.getUser(uuid);
         if (user == null) return null;
@@ -172,7 +360,9 @@ public class SynapseVaultPermission extends UpgradedVaultPermission {
         Group group = service.getGroup(name);
         if (group == null) return false;
 
-        group.setPermission(permission, service.getNormalSetOptions().withContexts(worldContext(world)));
+        writeGroup(group, VaultWriteQueue.Type.PERMISSION, permission, world,
+                () -> group.setPermission(permission, service.getNormalSetOptions().withContexts(worldContext(world)))
+        );
         return true;
     }
 
@@ -184,12 +374,30 @@ public class SynapseVaultPermission extends UpgradedVaultPermission {
         Group group = service.getGroup(name);
         if (group == null) return false;
 
-        group.unsetPermission(permission, service.getNormalUnsetOptions().withContexts(worldContext(world)));
+        writeGroup(group, VaultWriteQueue.Type.PERMISSION, permission, world,
+                () -> group.unsetPermission(permission, service.getNormalUnsetOptions().withContexts(worldContext(world)))
+        );
         return true;
     }
 
     @Override
     public String[] getGroups() {
-        return service.getGroups().stream().map(Group::getName).toArray(String[]::new);
+        Collection<Group> groups = service.getGroups();
+        String[] names = new String[groups.size()];
+        int i = 0;
+        for (Group group : groups) {
+            names[i++] = group.getName();
+        }
+        return names;
+    }
+
+    private static final class IndexedMemberships {
+        private final long created;
+        private final GroupMembershipIndex index;
+
+        IndexedMemberships(long created, GroupMembershipIndex index) {
+            this.created = created;
+            this.index = index;
+        }
     }
 }
@@ -0,0 +1,295 @@
+/*
+ * This file is part of synapse, licensed under the MIT License.
+ *
+ *  Copyright (c) lucko (Luck) <luck@lucko.me>
+ *  Copyright (c) contributors
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package me.lucko.synapse.vaultprovider;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Caches metadata values read through the Vault Chat API, along with their
+ * parsed int, double and boolean forms.
+ *
+ * <p>Entries are keyed by (subject, world, key), where the subject is a player
+ * uuid or a lower-cased group name. Values are parsed into each form the first
+ * time that form is read.</p>
+ */
+public class TypedMetaCache {
+    private static final String GLOBAL = "";
+    private static final int MAX_SUBJECTS = 5000;
+
+    private final long expireAfterNanos;
+    private final Map<Object, Map<String, Map<String, Value>>> subjects = new ConcurrentHashMap<>();
+
+    private final Function<Object, Map<String, Map<String, Value>>> subjectFactory = s -> new ConcurrentHashMap<>();
+    private final Function<String, Map<String, Value>> worldFactory = w -> new ConcurrentHashMap<>();
+
+    public TypedMetaCache(long expireAfter, TimeUnit unit) {
+        this.expireAfterNanos = unit.toNanos(expireAfter);
+    }
+
+    /**
+     * Gets a cached value.
+     *
+     * @param subject the subject
+     * @param world the world, or null
+     * @param key the metadata key
+     * @return the value, or null if there is no (unexpired) value cached
+     */
+    public Value get(Object subject, String world, String key) {
+        Map<String, Map<String, Value>> worlds = subjects.get(subject);
+        if (worlds == null) {
+            return null;
+        }
+
+        Map<String, Value> values = worlds.get(world == null ? GLOBAL : world);
+        if (values == null) {
+            return null;
+        }
+
+        Value value = values.get(key);
+        if (value == null || isExpired(value, System.nanoTime())) {
+            return null;
+        }
+        return value;
+    }
+
+    /**
+     * Caches a value.
+     *
+     * @param subject the subject
+     * @param world the world, or null
+     * @param key the metadata key
+     * @param raw the raw value
+     * @return the cached value
+     */
+    public Value put(Object subject, String world, String key, String raw) {
+        Value value = new Value(raw);
+        Map<String, Map<String, Value>> worlds = subjects.get(subject);
+        if (worlds == null) {
+            if (subjects.size() >= MAX_SUBJECTS) {
+                sweep();
+            }
+            worlds = subjects.computeIfAbsent(subject, subjectFactory);
+        }
+        worlds.computeIfAbsent(world == null ? GLOBAL : world, worldFactory).put(key, value);
+        return value;
+    }
+
+    /**
+     * Removes expired values, and clears the cache if it is still full.
+     */
+    private void sweep() {
+        long now = System.nanoTime();
+        for (Iterator<Map<String, Map<String, Value>>> subjectIt = subjects.values().iterator(); subjectIt.hasNext(); ) {
+            Map<String, Map<String, Value>> worlds = subjectIt.next();
+            for (Iterator<Map<String, Value>> worldIt = worlds.values().iterator(); worldIt.hasNext(); ) {
+                Map<String, Value> values = worldIt.next();
+                values.values().removeIf(value -> isExpired(value, now));
+                if (values.isEmpty()) {
+                    worldIt.remove();
+                }
+            }
+            if (worlds.isEmpty()) {
+                subjectIt.remove();
+            }
+        }
+
+        if (subjects.size() >= MAX_SUBJECTS) {
+            subjects.clear();
+        }
+    }
+
+    private boolean isExpired(Value value, long now) {
+        return now - value.created > expireAfterNanos;
+    }
+
+    public void invalidate(Object subject) {
+        subjects.remove(subject);
+    }
+
+    public void invalidateAll() {
+        subjects.clear();
+    }
+
+    public static final class Value {
+        public static final Value NONE = new Value(null);
+
+        private static final byte UNPARSED = 0;
+        private static final byte PARSED = 1;
+        private static final byte UNPARSEABLE = 2;
+
+        private final long created = System.nanoTime();
+        private final String raw;
+
+        // each form is written before its (volatile) state, so a reader which
+        // sees PARSED also sees the value
+        private int intValue;
+        private volatile byte intState = UNPARSED;
+        private double doubleValue;
+        private volatile byte doubleState = UNPARSED;
+        private boolean booleanValue;
+        private volatile byte booleanState = UNPARSED;
+
+        private Value(String raw) {
+            this.raw = raw;
+        }
+
+        public String stringValue(String def) {
+            return raw != null ? raw : def;
+        }
+
+        public int intValue(int def) {
+            byte state = intState;
+            if (state == UNPARSED) {
+                Integer i = parseInt(raw);
+                if (i != null) {
+                    intValue = i;
+                }
+                intState = state = i != null ? PARSED : UNPARSEABLE;
+            }
+            return state == PARSED ? intValue : def;
+        }
+
+        public double doubleValue(double def) {
+            byte state = doubleState;
+            if (state == UNPARSED) {
+                Double d = parseDouble(raw);
+                if (d != null) {
+                    doubleValue = d;
+                }
+                doubleState = state = d != null ? PARSED : UNPARSEABLE;
+            }
+            return state == PARSED ? doubleValue : def;
+        }
+
+        public boolean booleanValue(boolean def) {
+            byte state = booleanState;
+            if (state == UNPARSED) {
+                if ("true".equalsIgnoreCase(raw)) {
+                    booleanValue = true;
+                    state = PARSED;
+                } else if ("false".equalsIgnoreCase(raw)) {
+                    booleanValue = false;
+                    state = PARSED;
+                } else {
+                    state = UNPARSEABLE;
+                }
+                booleanState = state;
+            }
+            return state == PARSED ? booleanValue : def;
+        }
+
+        private static Integer parseInt(String s) {
+            if (s == null || s.isEmpty()) {
+                return null;
+            }
+
+            // reject obviously non-numeric values without throwing
+            for (int i = 0; i < s.length(); i++) {
+                char c = s.charAt(i);
+                if (!isDigit(c) && !(i == 0 && (c == '-' || c == '+'))) {
+                    return null;
+                }
+            }
+
+            try {
+                return Integer.parseInt(s);
+            } catch (NumberFormatException e) {
+                // out of range
+                return null;
+            }
+        }
+
+        // Character.isDigit accepts non-ASCII digits, which the parse methods reject
+        private static boolean isDigit(char c) {
+            return c >= '0' && c <= '9';
+        }
+
+        /**
+         * Parses a decimal number, with an optional sign and exponent, or
+         * NaN/Infinity. Unlike {@link Double#parseDouble(String)}, hex and
+         * type-suffixed forms ("1.0d") are rejected; anything else is
+         * checked up front, so no exception is thrown for invalid input.
+         */
+        private static Double parseDouble(String s) {
+            if (s == null) {
+                return null;
+            }
+            s = s.trim();
+            if (s.isEmpty()) {
+                return null;
+            }
+
+            int i = 0;
+            int len = s.length();
+            if (s.charAt(0) == '-' || s.charAt(0) == '+') {
+                i++;
+            }
+
+            String rest = s.substring(i);
+            if (rest.equals("NaN") || rest.equals("Infinity")) {
+                return Double.parseDouble(s);
+            }
+
+            int digits = 0;
+            while (i < len && isDigit(s.charAt(i))) {
+                i++;
+                digits++;
+            }
+            if (i < len && s.charAt(i) == '.') {
+                i++;
+                while (i < len && isDigit(s.charAt(i))) {
+                    i++;
+                    digits++;
+                }
+            }
+            if (digits == 0) {
+                return null;
+            }
+            if (i < len && (s.charAt(i) == 'e' || s.charAt(i) == 'E')) {
+                i++;
+                if (i < len && (s.charAt(i) == '-' || s.charAt(i) == '+')) {
+                    i++;
+                }
+                int exponentDigits = 0;
+                while (i < len && isDigit(s.charAt(i))) {
+                    i++;
+                    exponentDigits++;
+                }
+                if (exponentDigits == 0) {
+                    return null;
+                }
+            }
+            if (i != len) {
+                return null;
+            }
+            return Double.parseDouble(s);
+        }
+    }
+}
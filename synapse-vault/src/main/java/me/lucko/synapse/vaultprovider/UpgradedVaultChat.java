@@ -25,23 +25,40 @@
 
 package me.lucko.synapse.vaultprovider;
 
+import me.lucko.synapse.vaultprovider.VaultCallMetrics.Call;
+import me.lucko.synapse.vaultprovider.VaultCallMetrics.Shape;
+
 import net.milkbowl.vault.chat.Chat;
 import net.milkbowl.vault.permission.Permission;
 
-import org.bukkit.Bukkit;
 import org.bukkit.OfflinePlayer;
 import org.bukkit.World;
 import org.bukkit.entity.Player;
 
+import java.util.Locale;
 import java.util.UUID;
 
 @SuppressWarnings("deprecation")
 public abstract class UpgradedVaultChat extends Chat {
     private final Permission perms;
+    private final PlayerNameResolver resolver;
+    private final TypedMetaCache metaCache;
+    private final VaultCallMetrics metrics;
 
-    public UpgradedVaultChat(Permission perms) {
+    public UpgradedVaultChat(Permission perms, PlayerNameResolver resolver, TypedMetaCache metaCache, VaultCallMetrics metrics) {
         super(perms);
         this.perms = perms;
+        this.resolver = resolver;
+        this.metaCache = metaCache;
+        this.metrics = metrics;
+    }
+
+    public TypedMetaCache getMetaCache() {
+        return metaCache;
+    }
+
+    public VaultCallMetrics getMetrics() {
+        return metrics;
     }
 
     public boolean isEnabled() {
@@ -61,52 +78,140 @@ public abstract class UpgradedVaultChat extends Chat {
     public abstract String getGroupInfo(String world, String group, String key);
     public abstract void setGroupInfo(String world, String group, String key, Object value);
 
-    private static String strConvert(String s, String def) {
-        if (s != null) {
-            return s;
+    // callers pass metrics.start() ahead of the other arguments, so the
+    // recorded latency includes resolving a player name to a uuid
+    private TypedMetaCache.Value playerInfo(Shape shape, long start, String world, UUID uuid, String key) {
+        if (uuid == null || key == null) {
+            return TypedMetaCache.Value.NONE;
+        }
+
+        try {
+            TypedMetaCache.Value value = metaCache.get(uuid, world, key);
+            if (value == null) {
+                value = metaCache.put(uuid, world, key, getPlayerInfo(world, uuid, key));
+            }
+            return value;
+        } finally {
+            metrics.record(Call.GET_PLAYER_INFO, shape, start);
         }
-        return def;
     }
 
-    private static int intConvert(String s, int def) {
-        if (s == null) {
-            return def;
+    private TypedMetaCache.Value groupInfo(String world, String group, String key) {
+        if (group == null || key == null) {
+            return TypedMetaCache.Value.NONE;
         }
+
+        long start = metrics.start();
         try {
-            return Integer.parseInt(s);
-        } catch (NumberFormatException e) {
-            return def;
+            String subject = group.toLowerCase(Locale.ROOT);
+            TypedMetaCache.Value value = metaCache.get(subject, world, key);
+            if (value == null) {
+                value = metaCache.put(subject, world, key, getGroupInfo(world, group, key));
+            }
+            return value;
+        } finally {
+            metrics.record(Call.GET_GROUP_INFO, Shape.GROUP, start);
         }
     }
 
-    private static double doubleConvert(String s, double def) {
-        if (s == null) {
-            return def;
+    private String getPlayerPrefix(Shape shape, long start, String world, UUID uuid) {
+        try {
+            return getPlayerPrefix(world, uuid);
+        } finally {
+            metrics.record(Call.GET_PLAYER_PREFIX, shape, start);
         }
+    }
+
+    private String getPlayerSuffix(Shape shape, long start, String world, UUID uuid) {
         try {
-            return Double.parseDouble(s);
-        } catch (NumberFormatException e) {
-            return def;
+            return getPlayerSuffix(world, uuid);
+        } finally {
+            metrics.record(Call.GET_PLAYER_SUFFIX, shape, start);
         }
     }
 
-    private static boolean booleanConvert(String s, boolean def) {
-        if (s == null) {
-            return def;
+    private void setPlayerPrefix(Shape shape, long start, String world, UUID uuid, String prefix) {
+        try {
+            setPlayerPrefix(world, uuid, prefix);
+        } finally {
+            metrics.record(Call.SET_PLAYER_PREFIX, shape, start);
         }
-        if (s.equalsIgnoreCase("true")) {
-            return true;
-        } else if (s.equalsIgnoreCase("false")) {
-            return false;
+    }
+
+    private void setPlayerSuffix(Shape shape, long start, String world, UUID uuid, String prefix) {
+        try {
+            setPlayerSuffix(world, uuid, prefix);
+        } finally {
+            metrics.record(Call.SET_PLAYER_SUFFIX, shape, start);
         }
-        return def;
     }
 
-    private static UUID player(String player) {
-        if (player == null) {
-            return null;
+    private String getPlayerInfo(Shape shape, long start, String world, UUID uuid, String key) {
+        try {
+            return getPlayerInfo(world, uuid, key);
+        } finally {
+            metrics.record(Call.GET_PLAYER_INFO, shape, start);
         }
-        return player(Bukkit.getOfflinePlayer(player));
+    }
+
+    private void setPlayerInfo(Shape shape, long start, String world, UUID uuid, String key, Object value) {
+        try {
+            setPlayerInfo(world, uuid, key, value);
+        } finally {
+            metrics.record(Call.SET_PLAYER_INFO, shape, start);
+        }
+    }
+
+    private String getGroupPrefix(Shape shape, long start, String world, String group) {
+        try {
+            return getGroupPrefix(world, group);
+        } finally {
+            metrics.record(Call.GET_GROUP_PREFIX, shape, start);
+        }
+    }
+
+    private String getGroupSuffix(Shape shape, long start, String world, String group) {
+        try {
+            return getGroupSuffix(world, group);
+        } finally {
+            metrics.record(Call.GET_GROUP_SUFFIX, shape, start);
+        }
+    }
+
+    private void setGroupPrefix(Shape shape, long start, String world, String group, String prefix) {
+        try {
+            setGroupPrefix(world, group, prefix);
+        } finally {
+            metrics.record(Call.SET_GROUP_PREFIX, shape, start);
+        }
+    }
+
+    private void setGroupSuffix(Shape shape, long start, String world, String group, String prefix) {
+        try {
+            setGroupSuffix(world, group, prefix);
+        } finally {
+            metrics.record(Call.SET_GROUP_SUFFIX, shape, start);
+        }
+    }
+
+    private String getGroupInfo(Shape shape, long start, String world, String group, String key) {
+        try {
+            return getGroupInfo(world, group, key);
+        } finally {
+            metrics.record(Call.GET_GROUP_INFO, shape, start);
+        }
+    }
+
+    private void setGroupInfo(Shape shape, long start, String world, String group, String key, Object value) {
+        try {
+            setGroupInfo(world, group, key, value);
+        } finally {
+            metrics.record(Call.SET_GROUP_INFO, shape, start);
+        }
+    }
+
+    private UUID player(String player) {
+        return resolver.resolve(player);
     }
 
     private static UUID player(OfflinePlayer player) {
@@ -136,342 +241,342 @@ public abstract class UpgradedVaultChat extends Chat {
 
     @Override
     public String getPlayerPrefix(String world, String player) {
-        return getPlayerPrefix(world(world), player(player));
+        return getPlayerPrefix(Shape.NAME, metrics.start(), world(world), player(player));
     }
 
     @Override
     public String getPlayerPrefix(String world, OfflinePlayer player) {
-        return getPlayerPrefix(world(world), player(player));
+        return getPlayerPrefix(Shape.OFFLINE_PLAYER, metrics.start(), world(world), player(player));
     }
 
     @Override
     public String getPlayerPrefix(World world, String player) {
-        return getPlayerPrefix(world(world), player(player));
+        return getPlayerPrefix(Shape.NAME, metrics.start(), world(world), player(player));
     }
 
     @Override
     public String getPlayerPrefix(Player player) {
-        return getPlayerPrefix(world(player), player(player));
+        return getPlayerPrefix(Shape.PLAYER, metrics.start(), world(player), player(player));
     }
 
     @Override
     public void setPlayerPrefix(String world, String player, String prefix) {
-        setPlayerPrefix(world(world), player(player), prefix);
+        setPlayerPrefix(Shape.NAME, metrics.start(), world(world), player(player), prefix);
     }
 
     @Override
     public void setPlayerPrefix(String world, OfflinePlayer player, String prefix) {
-        setPlayerPrefix(world(world), player(player), prefix);
+        setPlayerPrefix(Shape.OFFLINE_PLAYER, metrics.start(), world(world), player(player), prefix);
     }
 
     @Override
     public void setPlayerPrefix(World world, String player, String prefix) {
-        setPlayerPrefix(world(world), player(player), prefix);
+        setPlayerPrefix(Shape.NAME, metrics.start(), world(world), player(player), prefix);
     }
 
     @Override
     public void setPlayerPrefix(Player player, String prefix) {
-        setPlayerPrefix(world(player), player(player), prefix);
+        setPlayerPrefix(Shape.PLAYER, metrics.start(), world(player), player(player), prefix);
     }
 
     @Override
     public String getPlayerSuffix(String world, String player) {
-        return getPlayerSuffix(world(world), player(player));
+        return getPlayerSuffix(Shape.NAME, metrics.start(), world(world), player(player));
     }
 
     @Override
     public String getPlayerSuffix(String world, OfflinePlayer player) {
-        return getPlayerSuffix(world(world), player(player));
+        return getPlayerSuffix(Shape.OFFLINE_PLAYER, metrics.start(), world(world), player(player));
     }
 
     @Override
     public String getPlayerSuffix(World world, String player) {
-        return getPlayerSuffix(world(world), player(player));
+        return getPlayerSuffix(Shape.NAME, metrics.start(), world(world), player(player));
     }
 
     @Override
     public String getPlayerSuffix(Player player) {
-        return getPlayerSuffix(world(player), player(player));
+        return getPlayerSuffix(Shape.PLAYER, metrics.start(), world(player), player(player));
     }
 
     @Override
     public void setPlayerSuffix(String world, String player, String suffix) {
-        setPlayerSuffix(world(world), player(player), suffix);
+        setPlayerSuffix(Shape.NAME, metrics.start(), world(world), player(player), suffix);
     }
 
     @Override
     public void setPlayerSuffix(String world, OfflinePlayer player, String suffix) {
-        setPlayerSuffix(world(world), player(player), suffix);
+        setPlayerSuffix(Shape.OFFLINE_PLAYER, metrics.start(), world(world), player(player), suffix);
     }
 
     @Override
     public void setPlayerSuffix(World world, String player, String suffix) {
-        setPlayerSuffix(world(world), player(player), suffix);
+        setPlayerSuffix(Shape.NAME, metrics.start(), world(world), player(player), suffix);
     }
 
     @Override
     public void setPlayerSuffix(Player player, String suffix) {
-        setPlayerSuffix(world(player), player(player), suffix);
+        setPlayerSuffix(Shape.PLAYER, metrics.start(), world(player), player(player), suffix);
     }
 
     @Override
     public String getGroupPrefix(World world, String group) {
-        return getGroupPrefix(world(world), group);
+        return getGroupPrefix(Shape.GROUP, metrics.start(), world(world), group);
     }
 
     @Override
     public void setGroupPrefix(World world, String group, String prefix) {
-        setGroupPrefix(world(world), group, prefix);
+        setGroupPrefix(Shape.GROUP, metrics.start(), world(world), group, prefix);
     }
 
     @Override
     public String getGroupSuffix(World world, String group) {
-        return getGroupSuffix(world(world), group);
+        return getGroupSuffix(Shape.GROUP, metrics.start(), world(world), group);
     }
 
     @Override
     public void setGroupSuffix(World world, String group, String suffix) {
-        setGroupSuffix(world(world), group, suffix);
+        setGroupSuffix(Shape.GROUP, metrics.start(), world(world), group, suffix);
     }
 
     @Override
     public int getPlayerInfoInteger(String world, OfflinePlayer player, String node, int defaultValue) {
-        return intConvert(getPlayerInfo(world(world), player(player), node), defaultValue);
+        return playerInfo(Shape.OFFLINE_PLAYER, metrics.start(), world(world), player(player), node).intValue(defaultValue);
     }
 
     @Override
     public int getPlayerInfoInteger(String world, String player, String node, int defaultValue) {
-        return intConvert(getPlayerInfo(world(world), player(player), node), defaultValue);
+        return playerInfo(Shape.NAME, metrics.start(), world(world), player(player), node).intValue(defaultValue);
     }
 
     @Override
     public int getPlayerInfoInteger(World world, String player, String node, int defaultValue) {
-        return intConvert(getPlayerInfo(world(world), player(player), node), defaultValue);
+        return playerInfo(Shape.NAME, metrics.start(), world(world), player(player), node).intValue(defaultValue);
     }
 
     @Override
     public int getPlayerInfoInteger(Player player, String node, int defaultValue) {
-        return intConvert(getPlayerInfo(world(player), player(player), node), defaultValue);
+        return playerInfo(Shape.PLAYER, metrics.start(), world(player), player(player), node).intValue(defaultValue);
     }
 
     @Override
     public void setPlayerInfoInteger(String world, OfflinePlayer player, String node, int value) {
-        setPlayerInfo(world(world), player(player), node, value);
+        setPlayerInfo(Shape.OFFLINE_PLAYER, metrics.start(), world(world), player(player), node, value);
     }
 
     @Override
     public void setPlayerInfoInteger(String world, String player, String node, int value) {
-        setPlayerInfo(world(world), player(player), node, value);
+        setPlayerInfo(Shape.NAME, metrics.start(), world(world), player(player), node, value);
     }
 
     @Override
     public void setPlayerInfoInteger(World world, String player, String node, int value) {
-        setPlayerInfo(world(world), player(player), node, value);
+        setPlayerInfo(Shape.NAME, metrics.start(), world(world), player(player), node, value);
     }
 
     @Override
     public void setPlayerInfoInteger(Player player, String node, int value) {
-        setPlayerInfo(world(player), player(player), node, value);
+        setPlayerInfo(Shape.PLAYER, metrics.start(), world(player), player(player), node, value);
     }
 
     @Override
     public int getGroupInfoInteger(String world, String group, String node, int defaultValue) {
-        return intConvert(getGroupInfo(world(world), group, node), defaultValue);
+        return groupInfo(world(world), group, node).intValue(defaultValue);
     }
 
     @Override
     public int getGroupInfoInteger(World world, String group, String node, int defaultValue) {
-        return intConvert(getGroupInfo(world(world), group, node), defaultValue);
+        return groupInfo(world(world), group, node).intValue(defaultValue);
     }
 
     @Override
     public void setGroupInfoInteger(String world, String group, String node, int value) {
-        setGroupInfo(world(world), group, node, value);
+        setGroupInfo(Shape.GROUP, metrics.start(), world(world), group, node, value);
     }
 
     @Override
     public void setGroupInfoInteger(World world, String group, String node, int value) {
-        setGroupInfo(world(world), group, node, value);
+        setGroupInfo(Shape.GROUP, metrics.start(), world(world), group, node, value);
     }
 
     @Override
     public double getPlayerInfoDouble(String world, OfflinePlayer player, String node, double defaultValue) {
-        return doubleConvert(getPlayerInfo(world(world), player(player), node), defaultValue);
+        return playerInfo(Shape.OFFLINE_PLAYER, metrics.start(), world(world), player(player), node).doubleValue(defaultValue);
     }
 
     @Override
     public double getPlayerInfoDouble(String world, String player, String node, double defaultValue) {
-        return doubleConvert(getPlayerInfo(world(world), player(player), node), defaultValue);
+        return playerInfo(Shape.NAME, metrics.start(), world(world), player(player), node).doubleValue(defaultValue);
     }
 
     @Override
     public double getPlayerInfoDouble(World world, String player, String node, double defaultValue) {
-        return doubleConvert(getPlayerInfo(world(world), player(player), node), defaultValue);
+        return playerInfo(Shape.NAME, metrics.start(), world(world), player(player), node).doubleValue(defaultValue);
     }
 
     @Override
     public double getPlayerInfoDouble(Player player, String node, double defaultValue) {
-        return doubleConvert(getPlayerInfo(world(player), player(player), node), defaultValue);
+        return playerInfo(Shape.PLAYER, metrics.start(), world(player), player(player), node).doubleValue(defaultValue);
     }
 
     @Override
     public void setPlayerInfoDouble(String world, OfflinePlayer player, String node, double value) {
-        setPlayerInfo(world(world), player(player), node, value);
+        setPlayerInfo(Shape.OFFLINE_PLAYER, metrics.start(), world(world), player(player), node, value);
     }
 
     @Override
     public void setPlayerInfoDouble(String world, String player, String node, double value) {
-        setPlayerInfo(world(world), player(player), node, value);
+        setPlayerInfo(Shape.NAME, metrics.start(), world(world), player(player), node, value);
     }
 
     @Override
     public void setPlayerInfoDouble(World world, String player, String node, double value) {
-        setPlayerInfo(world(world), player(player), node, value);
+        setPlayerInfo(Shape.NAME, metrics.start(), world(world), player(player), node, value);
     }
 
     @Override
     public void setPlayerInfoDouble(Player player, String node, double value) {
-        setPlayerInfo(world(player), player(player), node, value);
+        setPlayerInfo(Shape.PLAYER, metrics.start(), world(player), player(player), node, value);
     }
 
     @Override
     public double getGroupInfoDouble(String world, String group, String node, double defaultValue) {
-        return doubleConvert(getGroupInfo(world(world), group, node), defaultValue);
+        return groupInfo(world(world), group, node).doubleValue(defaultValue);
     }
 
     @Override
     public double getGroupInfoDouble(World world, String group, String node, double defaultValue) {
-        return doubleConvert(getGroupInfo(world(world), group, node), defaultValue);
+        return groupInfo(world(world), group, node).doubleValue(defaultValue);
     }
 
     @Override
     public void setGroupInfoDouble(String world, String group, String node, double value) {
-        setGroupInfo(world(world), group, node, value);
+        setGroupInfo(Shape.GROUP, metrics.start(), world(world), group, node, value);
     }
 
     @Override
     public void setGroupInfoDouble(World world, String group, String node, double value) {
-        setGroupInfo(world(world), group, node, value);
+        setGroupInfo(Shape.GROUP, metrics.start(), world(world), group, node, value);
     }
 
     @Override
     public boolean getPlayerInfoBoolean(String world, OfflinePlayer player, String node, boolean defaultValue) {
-        return booleanConvert(getPlayerInfo(world(world), player(player), node), defaultValue);
+        return playerInfo(Shape.OFFLINE_PLAYER, metrics.start(), world(world), player(player), node).booleanValue(defaultValue);
     }
 
     @Override
     public boolean getPlayerInfoBoolean(String world, String player, String node, boolean defaultValue) {
-        return booleanConvert(getPlayerInfo(world(world), player(player), node), defaultValue);
+        return playerInfo(Shape.NAME, metrics.start(), world(world), player(player), node).booleanValue(defaultValue);
     }
 
     @Override
     public boolean getPlayerInfoBoolean(World world, String player, String node, boolean defaultValue) {
-        return booleanConvert(getPlayerInfo(world(world), player(player), node), defaultValue);
+        return playerInfo(Shape.NAME, metrics.start(), world(world), player(player), node).booleanValue(defaultValue);
     }
 
     @Override
     public boolean getPlayerInfoBoolean(Player player, String node, boolean defaultValue) {
-        return booleanConvert(getPlayerInfo(world(player), player(player), node), defaultValue);
+        return playerInfo(Shape.PLAYER, metrics.start(), world(player), player(player), node).booleanValue(defaultValue);
     }
 
     @Override
     public void setPlayerInfoBoolean(String world, OfflinePlayer player, String node, boolean value) {
-        setPlayerInfo(world(world), player(player), node, value);
+        setPlayerInfo(Shape.OFFLINE_PLAYER, metrics.start(), world(world), player(player), node, value);
     }
 
     @Override
     public void setPlayerInfoBoolean(String world, String player, String node, boolean value) {
-        setPlayerInfo(world(world), player(player), node, value);
+        setPlayerInfo(Shape.NAME, metrics.start(), world(world), player(player), node, value);
     }
 
     @Override
     public void setPlayerInfoBoolean(World world, String player, String node, boolean value) {
-        setPlayerInfo(world(world), player(player), node, value);
+        setPlayerInfo(Shape.NAME, metrics.start(), world(world), player(player), node, value);
     }
 
     @Override
     public void setPlayerInfoBoolean(Player player, String node, boolean value) {
-        setPlayerInfo(world(player), player(player), node, value);
+        setPlayerInfo(Shape.PLAYER, metrics.start(), world(player), player(player), node, value);
     }
 
     @Override
     public boolean getGroupInfoBoolean(String world, String group, String node, boolean defaultValue) {
-        return booleanConvert(getGroupInfo(world(world), group, node), defaultValue);
+        return groupInfo(world(world), group, node).booleanValue(defaultValue);
     }
 
     @Override
     public boolean getGroupInfoBoolean(World world, String group, String node, boolean defaultValue) {
-        return booleanConvert(getGroupInfo(world(world), group, node), defaultValue);
+        return groupInfo(world(world), group, node).booleanValue(defaultValue);
     }
 
     @Override
     public void setGroupInfoBoolean(String world, String group, String node, boolean value) {
-        setGroupInfo(world(world), group, node, value);
+        setGroupInfo(Shape.GROUP, metrics.start(), world(world), group, node, value);
     }
 
     @Override
     public void setGroupInfoBoolean(World world, String group, String node, boolean value) {
-        setGroupInfo(world(world), group, node, value);
+        setGroupInfo(Shape.GROUP, metrics.start(), world(world), group, node, value);
     }
 
     @Override
     public String getPlayerInfoString(String world, OfflinePlayer player, String node, String defaultValue) {
-        return strConvert(getPlayerInfo(world(world), player(player), node), defaultValue);
+        return playerInfo(Shape.OFFLINE_PLAYER, metrics.start(), world(world), player(player), node).stringValue(defaultValue);
     }
 
     @Override
     public String getPlayerInfoString(String world, String player, String node, String defaultValue) {
-        return strConvert(getPlayerInfo(world(world), player(player), node), defaultValue);
+        return playerInfo(Shape.NAME, metrics.start(), world(world), player(player), node).stringValue(defaultValue);
     }
 
     @Override
     public String getPlayerInfoString(World world, String player, String node, String defaultValue) {
-        return strConvert(getPlayerInfo(world(world), player(player), node), defaultValue);
+        return playerInfo(Shape.NAME, metrics.start(), world(world), player(player), node).stringValue(defaultValue);
     }
 
     @Override
     public String getPlayerInfoString(Player player, String node, String defaultValue) {
-        return strConvert(getPlayerInfo(world(player), player(player), node), defaultValue);
+        return playerInfo(Shape.PLAYER, metrics.start(), world(player), player(player), node).stringValue(defaultValue);
     }
 
     @Override
     public void setPlayerInfoString(String world, OfflinePlayer player, String node, String value) {
-        setPlayerInfo(world(world), player(player), node, value);
+        setPlayerInfo(Shape.OFFLINE_PLAYER, metrics.start(), world(world), player(player), node, value);
     }
 
     @Override
     public void setPlayerInfoString(String world, String player, String node, String value) {
-        setPlayerInfo(world(world), player(player), node, value);
+        setPlayerInfo(Shape.NAME, metrics.start(), world(world), player(player), node, value);
     }
 
     @Override
     public void setPlayerInfoString(World world, String player, String node, String value) {
-        setPlayerInfo(world(world), player(player), node, value);
+        setPlayerInfo(Shape.NAME, metrics.start(), world(world), player(player), node, value);
     }
 
     @Override
     public void setPlayerInfoString(Player player, String node, String value) {
-        setPlayerInfo(world(player), player(player), node, value);
+        setPlayerInfo(Shape.PLAYER, metrics.start(), world(player), player(player), node, value);
     }
 
     @Override
     public String getGroupInfoString(String world, String group, String node, String defaultValue) {
-        return strConvert(getGroupInfo(world(world), group, node), defaultValue);
+        return groupInfo(world(world), group, node).stringValue(defaultValue);
     }
 
     @Override
     public String getGroupInfoString(World world, String group, String node, String defaultValue) {
-        return strConvert(getGroupInfo(world(world), group, node), defaultValue);
+        return groupInfo(world(world), group, node).stringValue(defaultValue);
     }
 
     @Override
     public void setGroupInfoString(String world, String group, String node, String value) {
-        setGroupInfo(world(world), group, node, value);
+        setGroupInfo(Shape.GROUP, metrics.start(), world(world), group, node, value);
     }
 
     @Override
     public void setGroupInfoString(World world, String group, String node, String value) {
-        setGroupInfo(world(world), group, node, value);
+        setGroupInfo(Shape.GROUP, metrics.start(), world(world), group, node, value);
     }
 
     @Override
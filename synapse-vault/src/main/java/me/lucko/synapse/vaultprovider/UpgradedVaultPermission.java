@@ -25,21 +25,36 @@
 
 package me.lucko.synapse.vaultprovider;
 
+import me.lucko.synapse.vaultprovider.VaultCallMetrics.Call;
+import me.lucko.synapse.vaultprovider.VaultCallMetrics.Shape;
+
 import net.milkbowl.vault.permission.Permission;
 
-import org.bukkit.Bukkit;
 import org.bukkit.OfflinePlayer;
 import org.bukkit.World;
 import org.bukkit.entity.Player;
+import org.bukkit.plugin.Plugin;
 import org.bukkit.plugin.java.JavaPlugin;
 
 import java.util.UUID;
 
 @SuppressWarnings("deprecation")
 public abstract class UpgradedVaultPermission extends Permission {
+    private final PlayerNameResolver resolver;
+    private final VaultCallMetrics metrics;
+
+    public UpgradedVaultPermission(PlayerNameResolver resolver, VaultCallMetrics metrics) {
+        this(JavaPlugin.getProvidingPlugin(Permission.class), resolver, metrics);
+    }
+
+    public UpgradedVaultPermission(Plugin vaultPlugin, PlayerNameResolver resolver, VaultCallMetrics metrics) {
+        super.plugin = vaultPlugin;
+        this.resolver = resolver;
+        this.metrics = metrics;
+    }
 
-    public UpgradedVaultPermission() {
-        super.plugin = JavaPlugin.getProvidingPlugin(Permission.class);
+    public VaultCallMetrics getMetrics() {
+        return metrics;
     }
 
     @Override
@@ -69,11 +84,98 @@ public abstract class UpgradedVaultPermission extends Permission {
     public abstract boolean groupAddPermission(String world, String name, String permission);
     public abstract boolean groupRemovePermission(String world, String name, String permission);
     
-    private static UUID player(String player) {
-        if (player == null) {
-            return null;
+    // callers pass metrics.start() ahead of the other arguments, so the
+    // recorded latency includes resolving a player name to a uuid
+    private boolean hasPermission(Shape shape, long start, String world, UUID uuid, String permission) {
+        try {
+            return hasPermission(world, uuid, permission);
+        } finally {
+            metrics.record(Call.HAS_PERMISSION, shape, start);
+        }
+    }
+
+    private boolean playerAddPermission(Shape shape, long start, String world, UUID uuid, String permission) {
+        try {
+            return playerAddPermission(world, uuid, permission);
+        } finally {
+            metrics.record(Call.PLAYER_ADD_PERMISSION, shape, start);
         }
-        return player(Bukkit.getOfflinePlayer(player));
+    }
+
+    private boolean playerRemovePermission(Shape shape, long start, String world, UUID uuid, String permission) {
+        try {
+            return playerRemovePermission(world, uuid, permission);
+        } finally {
+            metrics.record(Call.PLAYER_REMOVE_PERMISSION, shape, start);
+        }
+    }
+
+    private boolean playerInGroup(Shape shape, long start, String world, UUID uuid, String group) {
+        try {
+            return playerInGroup(world, uuid, group);
+        } finally {
+            metrics.record(Call.PLAYER_IN_GROUP, shape, start);
+        }
+    }
+
+    private boolean playerAddGroup(Shape shape, long start, String world, UUID uuid, String group) {
+        try {
+            return playerAddGroup(world, uuid, group);
+        } finally {
+            metrics.record(Call.PLAYER_ADD_GROUP, shape, start);
+        }
+    }
+
+    private boolean playerRemoveGroup(Shape shape, long start, String world, UUID uuid, String group) {
+        try {
+            return playerRemoveGroup(world, uuid, group);
+        } finally {
+            metrics.record(Call.PLAYER_REMOVE_GROUP, shape, start);
+        }
+    }
+
+    private String[] playerGetGroups(Shape shape, long start, String world, UUID uuid) {
+        try {
+            return playerGetGroups(world, uuid);
+        } finally {
+            metrics.record(Call.PLAYER_GET_GROUPS, shape, start);
+        }
+    }
+
+    private String playerPrimaryGroup(Shape shape, long start, String world, UUID uuid) {
+        try {
+            return playerPrimaryGroup(world, uuid);
+        } finally {
+            metrics.record(Call.PLAYER_PRIMARY_GROUP, shape, start);
+        }
+    }
+
+    private boolean groupHasPermission(Shape shape, long start, String world, String name, String permission) {
+        try {
+            return groupHasPermission(world, name, permission);
+        } finally {
+            metrics.record(Call.GROUP_HAS_PERMISSION, shape, start);
+        }
+    }
+
+    private boolean groupAddPermission(Shape shape, long start, String world, String name, String permission) {
+        try {
+            return groupAddPermission(world, name, permission);
+        } finally {
+            metrics.record(Call.GROUP_ADD_PERMISSION, shape, start);
+        }
+    }
+
+    private boolean groupRemovePermission(Shape shape, long start, String world, String name, String permission) {
+        try {
+            return groupRemovePermission(world, name, permission);
+        } finally {
+            metrics.record(Call.GROUP_REMOVE_PERMISSION, shape, start);
+        }
+    }
+
+    private UUID player(String player) {
+        return resolver.resolve(player);
     }
 
     private static UUID player(OfflinePlayer player) {
@@ -103,207 +205,207 @@ public abstract class UpgradedVaultPermission extends Permission {
 
     @Override
     public boolean has(String world, String player, String permission) {
-        return hasPermission(world(world), player(player), permission);
+        return hasPermission(Shape.NAME, metrics.start(), world(world), player(player), permission);
     }
 
     @Override
     public boolean has(World world, String player, String permission) {
-        return hasPermission(world(world), player(player), permission);
+        return hasPermission(Shape.NAME, metrics.start(), world(world), player(player), permission);
     }
 
     @Override
     public boolean has(Player player, String permission) {
-        return hasPermission(world(player), player(player), permission);
+        return hasPermission(Shape.PLAYER, metrics.start(), world(player), player(player), permission);
     }
 
     @Override
     public boolean playerHas(String world, String player, String permission) {
-        return hasPermission(world(world), player(player), permission);
+        return hasPermission(Shape.NAME, metrics.start(), world(world), player(player), permission);
     }
 
     @Override
     public boolean playerHas(World world, String player, String permission) {
-        return hasPermission(world(world), player(player), permission);
+        return hasPermission(Shape.NAME, metrics.start(), world(world), player(player), permission);
     }
 
     @Override
     public boolean playerHas(String world, OfflinePlayer player, String permission) {
-        return hasPermission(world(world), player(player), permission);
+        return hasPermission(Shape.OFFLINE_PLAYER, metrics.start(), world(world), player(player), permission);
     }
 
     @Override
     public boolean playerHas(Player player, String permission) {
-        return hasPermission(world(player), player(player), permission);
+        return hasPermission(Shape.PLAYER, metrics.start(), world(player), player(player), permission);
     }
 
     @Override
     public boolean playerAdd(String world, String player, String permission) {
-        return playerAddPermission(world(world), player(player), permission);
+        return playerAddPermission(Shape.NAME, metrics.start(), world(world), player(player), permission);
     }
 
     @Override
     public boolean playerAdd(World world, String player, String permission) {
-        return playerAddPermission(world(world), player(player), permission);
+        return playerAddPermission(Shape.NAME, metrics.start(), world(world), player(player), permission);
     }
 
     @Override
     public boolean playerAdd(String world, OfflinePlayer player, String permission) {
-        return playerAddPermission(world(world), player(player), permission);
+        return playerAddPermission(Shape.OFFLINE_PLAYER, metrics.start(), world(world), player(player), permission);
     }
 
     @Override
     public boolean playerAdd(Player player, String permission) {
-        return playerAddPermission(world(player), player(player), permission);
+        return playerAddPermission(Shape.PLAYER, metrics.start(), world(player), player(player), permission);
     }
 
     @Override
     public boolean playerRemove(String world, String player, String permission) {
-        return playerRemovePermission(world(world), player(player), permission);
+        return playerRemovePermission(Shape.NAME, metrics.start(), world(world), player(player), permission);
     }
 
     @Override
     public boolean playerRemove(String world, OfflinePlayer player, String permission) {
-        return playerRemovePermission(world(world), player(player), permission);
+        return playerRemovePermission(Shape.OFFLINE_PLAYER, metrics.start(), world(world), player(player), permission);
     }
 
     @Override
     public boolean playerRemove(World world, String player, String permission) {
-        return playerRemovePermission(world(world), player(player), permission);
+        return playerRemovePermission(Shape.NAME, metrics.start(), world(world), player(player), permission);
     }
 
     @Override
     public boolean playerRemove(Player player, String permission) {
-        return playerRemovePermission(world(player), player(player), permission);
+        return playerRemovePermission(Shape.PLAYER, metrics.start(), world(player), player(player), permission);
     }
 
     @Override
     public boolean groupHas(String world, String group, String permission) {
-        return groupHasPermission(world(world), group, permission);
+        return groupHasPermission(Shape.GROUP, metrics.start(), world(world), group, permission);
     }
 
     @Override
     public boolean groupHas(World world, String group, String permission) {
-        return groupHasPermission(world(world), group, permission);
+        return groupHasPermission(Shape.GROUP, metrics.start(), world(world), group, permission);
     }
 
     @Override
     public boolean groupAdd(String world, String group, String permission) {
-        return groupAddPermission(world(world), group, permission);
+        return groupAddPermission(Shape.GROUP, metrics.start(), world(world), group, permission);
     }
 
     @Override
     public boolean groupAdd(World world, String group, String permission) {
-        return groupAddPermission(world(world), group, permission);
+        return groupAddPermission(Shape.GROUP, metrics.start(), world(world), group, permission);
     }
 
     @Override
     public boolean groupRemove(String world, String group, String permission) {
-        return groupRemovePermission(world(world), group, permission);
+        return groupRemovePermission(Shape.GROUP, metrics.start(), world(world), group, permission);
     }
 
     @Override
     public boolean groupRemove(World world, String group, String permission) {
-        return groupRemovePermission(world(world), group, permission);
+        return groupRemovePermission(Shape.GROUP, metrics.start(), world(world), group, permission);
     }
 
     @Override
     public boolean playerInGroup(String world, String player, String group) {
-        return playerInGroup(world(world), player(player), group);
+        return playerInGroup(Shape.NAME, metrics.start(), world(world), player(player), group);
     }
 
     @Override
     public boolean playerInGroup(World world, String player, String group) {
-        return playerInGroup(world(world), player(player), group);
+        return playerInGroup(Shape.NAME, metrics.start(), world(world), player(player), group);
     }
 
     @Override
     public boolean playerInGroup(String world, OfflinePlayer player, String group) {
-        return playerInGroup(world(world), player(player), group);
+        return playerInGroup(Shape.OFFLINE_PLAYER, metrics.start(), world(world), player(player), group);
     }
 
     @Override
     public boolean playerInGroup(Player player, String group) {
-        return playerInGroup(world(player), player(player), group);
+        return playerInGroup(Shape.PLAYER, metrics.start(), world(player), player(player), group);
     }
 
     @Override
     public boolean playerAddGroup(String world, String player, String group) {
-        return playerAddGroup(world(world), player(player), group);
+        return playerAddGroup(Shape.NAME, metrics.start(), world(world), player(player), group);
     }
 
     @Override
     public boolean playerAddGroup(World world, String player, String group) {
-        return playerAddGroup(world(world), player(player), group);
+        return playerAddGroup(Shape.NAME, metrics.start(), world(world), player(player), group);
     }
 
     @Override
     public boolean playerAddGroup(String world, OfflinePlayer player, String group) {
-        return playerAddGroup(world(world), player(player), group);
+        return playerAddGroup(Shape.OFFLINE_PLAYER, metrics.start(), world(world), player(player), group);
     }
 
     @Override
     public boolean playerAddGroup(Player player, String group) {
-        return playerAddGroup(world(player), player(player), group);
+        return playerAddGroup(Shape.PLAYER, metrics.start(), world(player), player(player), group);
     }
 
     @Override
     public boolean playerRemoveGroup(String world, String player, String group) {
-        return playerRemoveGroup(world(world), player(player), group);
+        return playerRemoveGroup(Shape.NAME, metrics.start(), world(world), player(player), group);
     }
 
     @Override
     public boolean playerRemoveGroup(World world, String player, String group) {
-        return playerRemoveGroup(world(world), player(player), group);
+        return playerRemoveGroup(Shape.NAME, metrics.start(), world(world), player(player), group);
     }
 
     @Override
     public boolean playerRemoveGroup(String world, OfflinePlayer player, String group) {
-        return playerRemoveGroup(world(world), player(player), group);
+        return playerRemoveGroup(Shape.OFFLINE_PLAYER, metrics.start(), world(world), player(player), group);
     }
 
     @Override
     public boolean playerRemoveGroup(Player player, String group) {
-        return playerRemoveGroup(world(player), player(player), group);
+        return playerRemoveGroup(Shape.PLAYER, metrics.start(), world(player), player(player), group);
     }
 
     @Override
     public String[] getPlayerGroups(String world, String player) {
-        return playerGetGroups(world(world), player(player));
+        return playerGetGroups(Shape.NAME, metrics.start(), world(world), player(player));
     }
 
     @Override
     public String[] getPlayerGroups(World world, String player) {
-        return playerGetGroups(world(world), player(player));
+        return playerGetGroups(Shape.NAME, metrics.start(), world(world), player(player));
     }
 
     @Override
     public String[] getPlayerGroups(String world, OfflinePlayer player) {
-        return playerGetGroups(world(world), player(player));
+        return playerGetGroups(Shape.OFFLINE_PLAYER, metrics.start(), world(world), player(player));
     }
 
     @Override
     public String[] getPlayerGroups(Player player) {
-        return playerGetGroups(world(player), player(player));
+        return playerGetGroups(Shape.PLAYER, metrics.start(), world(player), player(player));
     }
 
     @Override
     public String getPrimaryGroup(String world, String player) {
-        return playerPrimaryGroup(world(world), player(player));
+        return playerPrimaryGroup(Shape.NAME, metrics.start(), world(world), player(player));
     }
 
     @Override
     public String getPrimaryGroup(World world, String player) {
-        return playerPrimaryGroup(world(world), player(player));
+        return playerPrimaryGroup(Shape.NAME, metrics.start(), world(world), player(player));
     }
 
     @Override
     public String getPrimaryGroup(String world, OfflinePlayer player) {
-        return playerPrimaryGroup(world(world), player(player));
+        return playerPrimaryGroup(Shape.OFFLINE_PLAYER, metrics.start(), world(world), player(player));
     }
 
     @Override
     public String getPrimaryGroup(Player player) {
-        return playerPrimaryGroup(world(player), player(player));
+        return playerPrimaryGroup(Shape.PLAYER, metrics.start(), world(player), player(player));
     }
 
 }
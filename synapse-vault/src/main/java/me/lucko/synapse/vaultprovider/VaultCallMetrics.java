@@ -0,0 +1,228 @@
+/*
+ * This file is part of synapse, licensed under the MIT License.
+ *
+ *  Copyright (c) lucko (Luck) <luck@lucko.me>
+ *  Copyright (c) contributors
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package me.lucko.synapse.vaultprovider;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Records call counts and latencies for the Vault API methods implemented by
+ * the bridge, broken down by the overload shape used to make the call.
+ *
+ * <p>Latencies are recorded in a histogram with power-of-two nanosecond
+ * buckets. All counters are striped, so recording is cheap and does not
+ * contend between threads.</p>
+ */
+public class VaultCallMetrics {
+
+    public enum Call {
+        HAS_PERMISSION,
+        PLAYER_ADD_PERMISSION,
+        PLAYER_REMOVE_PERMISSION,
+        PLAYER_IN_GROUP,
+        PLAYER_ADD_GROUP,
+        PLAYER_REMOVE_GROUP,
+        PLAYER_GET_GROUPS,
+        PLAYER_PRIMARY_GROUP,
+        GROUP_HAS_PERMISSION,
+        GROUP_ADD_PERMISSION,
+        GROUP_REMOVE_PERMISSION,
+        GET_PLAYER_PREFIX,
+        GET_PLAYER_SUFFIX,
+        SET_PLAYER_PREFIX,
+        SET_PLAYER_SUFFIX,
+        GET_PLAYER_INFO,
+        SET_PLAYER_INFO,
+        GET_GROUP_PREFIX,
+        GET_GROUP_SUFFIX,
+        SET_GROUP_PREFIX,
+        SET_GROUP_SUFFIX,
+        GET_GROUP_INFO,
+        SET_GROUP_INFO
+    }
+
+    public enum Shape {
+        /** Player identified by name */
+        NAME,
+        /** Player identified by an OfflinePlayer */
+        OFFLINE_PLAYER,
+        /** Player identified by an (online) Player */
+        PLAYER,
+        /** Call made against a group */
+        GROUP
+    }
+
+    private static final int BUCKETS = 40;
+    private static final Call[] CALLS = Call.values();
+    private static final Shape[] SHAPES = Shape.values();
+
+    private final boolean enabled;
+    private final LongAdder[][] counts = new LongAdder[CALLS.length][SHAPES.length];
+    private final LongAdder[][] histograms = new LongAdder[CALLS.length][BUCKETS];
+    private final LongAdder[] totalNanos = new LongAdder[CALLS.length];
+
+    public VaultCallMetrics(boolean enabled) {
+        this.enabled = enabled;
+        for (int i = 0; i < CALLS.length; i++) {
+            for (int j = 0; j < SHAPES.length; j++) {
+                counts[i][j] = new LongAdder();
+            }
+            for (int j = 0; j < BUCKETS; j++) {
+                histograms[i][j] = new LongAdder();
+            }
+            totalNanos[i] = new LongAdder();
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Marks the start of a call.
+     *
+     * @return the start time, to be passed to {@link #record(Call, Shape, long)}
+     */
+    public long start() {
+        return enabled ? System.nanoTime() : 0L;
+    }
+
+    public void record(Call call, Shape shape, long start) {
+        if (!enabled) {
+            return;
+        }
+
+        long duration = Math.max(0L, System.nanoTime() - start);
+        int bucket = Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(duration));
+
+        int i = call.ordinal();
+        counts[i][shape.ordinal()].increment();
+        histograms[i][bucket].increment();
+        totalNanos[i].add(duration);
+    }
+
+    public void reset() {
+        for (int i = 0; i < CALLS.length; i++) {
+            for (LongAdder count : counts[i]) {
+                count.reset();
+            }
+            for (LongAdder bucket : histograms[i]) {
+                bucket.reset();
+            }
+            totalNanos[i].reset();
+        }
+    }
+
+    /**
+     * Produces a human readable summary of the recorded metrics, ordered by
+     * the total time spent in each call.
+     *
+     * @return the summary lines
+     */
+    public List<String> summarize() {
+        List<Summary> summaries = new ArrayList<>();
+        for (Call call : CALLS) {
+            Summary summary = new Summary(call);
+            if (summary.count != 0) {
+                summaries.add(summary);
+            }
+        }
+        summaries.sort((a, b) -> Long.compare(b.totalNanos, a.totalNanos));
+
+        List<String> lines = new ArrayList<>();
+        if (summaries.isEmpty()) {
+            lines.add("No Vault calls recorded.");
+            return lines;
+        }
+
+        for (Summary summary : summaries) {
+            lines.add(String.format(Locale.ROOT, "%s: %d calls, %.1fms total, mean %s, p50 <%s, p99 <%s",
+                    summary.call.name().toLowerCase(Locale.ROOT),
+                    summary.count,
+                    summary.totalNanos / 1e6,
+                    formatNanos(summary.totalNanos / summary.count),
+                    formatNanos(summary.percentile(0.50)),
+                    formatNanos(summary.percentile(0.99))
+            ));
+
+            StringBuilder shapes = new StringBuilder("    by shape:");
+            for (Shape shape : SHAPES) {
+                long count = counts[summary.call.ordinal()][shape.ordinal()].sum();
+                if (count != 0) {
+                    shapes.append(' ').append(shape.name().toLowerCase(Locale.ROOT)).append('=').append(count);
+                }
+            }
+            lines.add(shapes.toString());
+        }
+        return lines;
+    }
+
+    private static String formatNanos(long nanos) {
+        if (nanos < TimeUnit.MICROSECONDS.toNanos(1)) {
+            return nanos + "ns";
+        }
+        if (nanos < TimeUnit.MILLISECONDS.toNanos(1)) {
+            return String.format(Locale.ROOT, "%.1fus", nanos / 1e3);
+        }
+        return String.format(Locale.ROOT, "%.2fms", nanos / 1e6);
+    }
+
+    private final class Summary {
+        private final Call call;
+        private final long[] buckets = new long[BUCKETS];
+        private final long count;
+        private final long totalNanos;
+
+        private Summary(Call call) {
+            this.call = call;
+            long count = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                buckets[i] = histograms[call.ordinal()][i].sum();
+                count += buckets[i];
+            }
+            this.count = count;
+            this.totalNanos = VaultCallMetrics.this.totalNanos[call.ordinal()].sum();
+        }
+
+        /**
+         * Gets the upper bound of the bucket containing the given percentile.
+         */
+        private long percentile(double percentile) {
+            long target = (long) Math.ceil(count * percentile);
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += buckets[i];
+                if (seen >= target) {
+                    return 1L << i;
+                }
+            }
+            return 1L << (BUCKETS - 1);
+        }
+    }
+}
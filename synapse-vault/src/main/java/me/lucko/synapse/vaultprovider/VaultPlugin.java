@@ -28,18 +28,66 @@ package me.lucko.synapse.vaultprovider;
 import org.bukkit.event.Listener;
 import org.bukkit.plugin.java.JavaPlugin;
 
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.logging.Level;
+
 /**
  * Uses synapse to implement the Vault Permission and Chat APIs
  */
 public class VaultPlugin extends JavaPlugin implements Listener {
 
+    private PlayerNameResolver resolver;
+    private VaultCallMetrics metrics;
     private VaultRegistrar registrar;
 
     @Override
     public void onEnable() {
-        registrar = new VaultRegistrar(this);
+        saveDefaultConfig();
+
+        resolver = new PlayerNameResolver(this);
+        getServer().getPluginManager().registerEvents(resolver, this);
+        resolver.populate();
+
+        metrics = new VaultCallMetrics(getConfig().getBoolean("metrics.enabled", false));
+
+        registrar = new VaultRegistrar(this, resolver, metrics);
         getServer().getPluginManager().registerEvents(registrar, this);
 
         registrar.update();
+
+        getCommand("synapsevault").setExecutor(new VaultStatsCommand(registrar));
+
+        long dumpInterval = getConfig().getLong("metrics.dump-interval", 0) * 20L;
+        if (metrics.isEnabled() && dumpInterval > 0) {
+            getServer().getScheduler().runTaskTimerAsynchronously(this, this::dumpStats, dumpInterval, dumpInterval);
+        }
+    }
+
+    @Override
+    public void onDisable() {
+        if (registrar != null) {
+            registrar.shutdown();
+        }
+    }
+
+    private void dumpStats() {
+        List<String> lines = new ArrayList<>();
+        lines.add("# " + new SimpleDateFormat("yyyy-MM-dd HH:mm:ss").format(new Date()));
+        lines.addAll(registrar.getStats());
+        lines.add("");
+
+        File file = new File(getDataFolder(), "vault-stats.txt");
+        try {
+            Files.write(file.toPath(), lines, StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            getLogger().log(Level.WARNING, "Unable to write Vault call stats to " + file, e);
+        }
     }
 }
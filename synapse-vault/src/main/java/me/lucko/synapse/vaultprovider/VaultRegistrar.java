@@ -30,21 +30,38 @@ import me.lucko.synapse.permission.PermissionService;
 import net.milkbowl.vault.chat.Chat;
 import net.milkbowl.vault.permission.Permission;
 
+import org.bukkit.configuration.ConfigurationSection;
 import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
 import org.bukkit.event.Listener;
+import org.bukkit.event.player.PlayerQuitEvent;
 import org.bukkit.event.server.ServiceRegisterEvent;
 import org.bukkit.event.server.ServiceUnregisterEvent;
+import org.bukkit.event.world.WorldUnloadEvent;
 import org.bukkit.plugin.RegisteredServiceProvider;
 import org.bukkit.plugin.ServicePriority;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nullable;
+
 public class VaultRegistrar implements Listener {
 
     private final VaultPlugin plugin;
+    private final PlayerNameResolver resolver;
+    private final VaultCallMetrics metrics;
     private SynapseVaultPermission permission = null;
     private SynapseVaultChat chat = null;
+    private WorldContextCache worldContexts = null;
+    private VaultWriteQueue writeQueue = null;
 
-    public VaultRegistrar(VaultPlugin plugin) {
+    public VaultRegistrar(VaultPlugin plugin, PlayerNameResolver resolver, VaultCallMetrics metrics) {
         this.plugin = plugin;
+        this.resolver = resolver;
+        this.metrics = metrics;
     }
 
     public void update() {
@@ -60,6 +77,14 @@ public class VaultRegistrar implements Listener {
         register(service);
     }
 
+    /**
+     * Unregisters the services provided by this registrar, submitting any
+     * pending writes.
+     */
+    public void shutdown() {
+        unregister(false);
+    }
+
     private void unregister(boolean notify) {
         if (permission != null) {
             if (notify) {
@@ -75,6 +100,11 @@ public class VaultRegistrar implements Listener {
             plugin.getServer().getServicesManager().unregister(Chat.class, chat);
             chat = null;
         }
+        worldContexts = null;
+        if (writeQueue != null) {
+            writeQueue.shutdown();
+            writeQueue = null;
+        }
     }
 
     private void register(PermissionService service) {
@@ -89,12 +119,92 @@ public class VaultRegistrar implements Listener {
         // change
         unregister(false);
         plugin.getLogger().info("Providing Vault Permission/Chat using synapse: " + service.getProviderName());
-        permission = new SynapseVaultPermission(service);
-        chat = new SynapseVaultChat(service, permission);
+        worldContexts = new WorldContextCache(service, world -> plugin.getServer().getWorld(world) != null);
+        writeQueue = createWriteQueue();
+        TypedMetaCache metaCache = new TypedMetaCache(plugin.getConfig().getLong("meta-cache.expire-after", 5), TimeUnit.SECONDS);
+        permission = new SynapseVaultPermission(service, resolver, worldContexts, writeQueue, createDecisionCache(), metaCache, metrics);
+        chat = new SynapseVaultChat(service, permission, resolver, worldContexts, writeQueue, metaCache, metrics);
         plugin.getServer().getServicesManager().register(Permission.class, permission, plugin, ServicePriority.High);
         plugin.getServer().getServicesManager().register(Chat.class, chat, plugin, ServicePriority.High);
     }
 
+    private VaultWriteQueue createWriteQueue() {
+        ConfigurationSection config = plugin.getConfig().getConfigurationSection("write-queue");
+        if (config == null || !config.getBoolean("enabled", false)) {
+            return null;
+        }
+
+        VaultWriteQueue writeQueue = new VaultWriteQueue(plugin, config.getInt("batch-size", 250), config.getInt("max-pending", 10000));
+        writeQueue.start();
+        return writeQueue;
+    }
+
+    private PermissionDecisionCache createDecisionCache() {
+        ConfigurationSection config = plugin.getConfig().getConfigurationSection("decision-cache");
+        if (config == null || !config.getBoolean("enabled", false)) {
+            return null;
+        }
+
+        return new PermissionDecisionCache(
+                config.getInt("max-entries-per-user", 512),
+                config.getLong("expire-after", 10),
+                TimeUnit.SECONDS
+        );
+    }
+
+    /**
+     * Gets the hit ratio of the permission decision cache.
+     *
+     * @return the hit ratio, or -1 if the cache is not in use
+     */
+    public double getDecisionCacheHitRatio() {
+        if (permission == null || permission.getDecisionCache() == null) {
+            return -1;
+        }
+        return permission.getDecisionCache().getHitRatio();
+    }
+
+    @Nullable
+    public VaultWriteQueue getWriteQueue() {
+        return writeQueue;
+    }
+
+    public VaultCallMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Produces a human readable summary of the call metrics and the state of
+     * the caches and write queue.
+     *
+     * @return the summary lines
+     */
+    public List<String> getStats() {
+        List<String> lines = new ArrayList<>();
+        if (metrics.isEnabled()) {
+            lines.addAll(metrics.summarize());
+        } else {
+            lines.add("Call metrics are disabled.");
+        }
+
+        double hitRatio = getDecisionCacheHitRatio();
+        if (hitRatio >= 0) {
+            lines.add(String.format(Locale.ROOT, "decision cache: %.1f%% hit ratio", hitRatio * 100));
+        }
+
+        VaultWriteQueue writeQueue = this.writeQueue;
+        if (writeQueue != null) {
+            lines.add(String.format(Locale.ROOT, "write queue: %d pending, %d submitted, %d coalesced, %d completed, %d failed",
+                    writeQueue.getPending(),
+                    writeQueue.getSubmitted(),
+                    writeQueue.getCoalesced(),
+                    writeQueue.getCompleted(),
+                    writeQueue.getFailed()
+            ));
+        }
+        return lines;
+    }
+
     @EventHandler
     public void onServiceRegister(ServiceRegisterEvent e) {
         RegisteredServiceProvider<?> provider = e.getProvider();
@@ -110,4 +220,21 @@ public class VaultRegistrar implements Listener {
             update();
         }
     }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onQuit(PlayerQuitEvent e) {
+        if (permission != null) {
+            permission.invalidate(e.getPlayer().getUniqueId());
+        }
+        if (chat != null) {
+            chat.getMetaCache().invalidate(e.getPlayer().getUniqueId());
+        }
+    }
+
+    @EventHandler
+    public void onWorldUnload(WorldUnloadEvent e) {
+        if (worldContexts != null) {
+            worldContexts.invalidate(e.getWorld().getName());
+        }
+    }
 }
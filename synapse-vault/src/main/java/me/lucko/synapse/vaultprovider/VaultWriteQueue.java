@@ -0,0 +1,304 @@
+/*
+ * This file is part of synapse, licensed under the MIT License.
+ *
+ *  Copyright (c) lucko (Luck) <luck@lucko.me>
+ *  Copyright (c) contributors
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package me.lucko.synapse.vaultprovider;
+
+import me.lucko.synapse.util.FutureAction;
+
+import org.bukkit.plugin.Plugin;
+import org.bukkit.scheduler.BukkitTask;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+
+/**
+ * Buffers writes made through the Vault API and submits them to the
+ * PermissionService in batches.
+ *
+ * <p>Repeated writes to the same (subject, node, world) made before the queue
+ * is next drained are coalesced, so only the most recent one is submitted.
+ * Once the queue holds {@code maxPending} writes, further writes to new keys
+ * are submitted straight away on the calling thread.</p>
+ */
+public class VaultWriteQueue implements Runnable {
+
+    public enum Type {
+        PERMISSION, GROUP, PREFIX, SUFFIX, METADATA
+    }
+
+    private final Plugin plugin;
+    private final int batchSize;
+    private final int maxPending;
+
+    private final Map<Key, Write> pending = new LinkedHashMap<>();
+    // writes whose future can't be observed, polled each tick
+    private final List<Write> inFlight = new ArrayList<>();
+    // submitted writes which haven't completed yet, waited for on shutdown
+    private final Set<Future<Void>> outstanding = ConcurrentHashMap.newKeySet();
+    private BukkitTask task = null;
+
+    private final LongAdder submitted = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+    private final LongAdder completed = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+
+    public VaultWriteQueue(Plugin plugin, int batchSize, int maxPending) {
+        this.plugin = plugin;
+        this.batchSize = batchSize;
+        this.maxPending = maxPending;
+    }
+
+    public void start() {
+        task = plugin.getServer().getScheduler().runTaskTimer(plugin, this, 1L, 1L);
+    }
+
+    /**
+     * Stops the queue, submitting any pending writes and waiting for them to
+     * complete.
+     */
+    public void shutdown() {
+        if (task != null) {
+            task.cancel();
+            task = null;
+        }
+        drain(Integer.MAX_VALUE);
+
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        for (Future<Void> future : new ArrayList<>(outstanding)) {
+            try {
+                future.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (TimeoutException e) {
+                plugin.getLogger().warning("Timed out waiting for " + outstanding.size() + " Vault writes to complete");
+                break;
+            } catch (ExecutionException e) {
+                // reported by the completion callback
+            }
+        }
+        poll();
+    }
+
+    /**
+     * Queues a write.
+     *
+     * @param subject the subject being written to, a player uuid or group name
+     * @param type the type of write
+     * @param node the node being written, or null if the type has no node
+     * @param world the world, or null
+     * @param action performs the write
+     * @param callback called once the write has completed or failed
+     */
+    public void enqueue(Object subject, Type type, String node, String world, Supplier<FutureAction> action, Runnable callback) {
+        Write write = new Write(action, callback);
+        Key key = new Key(subject, type, node, world);
+        synchronized (pending) {
+            if (pending.size() < maxPending || pending.containsKey(key)) {
+                if (pending.put(key, write) != null) {
+                    coalesced.increment();
+                }
+                return;
+            }
+        }
+
+        // the queue is full, and there is no earlier write to the same key
+        // which this one needs to follow
+        submit(write);
+    }
+
+    @Override
+    public void run() {
+        drain(batchSize);
+        poll();
+    }
+
+    private void drain(int max) {
+        List<Write> batch;
+        synchronized (pending) {
+            if (pending.isEmpty()) {
+                return;
+            }
+
+            batch = new ArrayList<>(Math.min(max, pending.size()));
+            Iterator<Write> it = pending.values().iterator();
+            while (it.hasNext() && batch.size() < max) {
+                batch.add(it.next());
+                it.remove();
+            }
+        }
+
+        for (Write write : batch) {
+            submit(write);
+        }
+    }
+
+    private void submit(Write write) {
+        submitted.increment();
+
+        FutureAction action;
+        try {
+            action = write.action.get();
+        } catch (Exception e) {
+            onComplete(write, e);
+            return;
+        }
+
+        Future<Void> future = action.asFuture();
+        if (future.isDone()) {
+            write.future = future;
+            complete(write);
+            return;
+        }
+
+        outstanding.add(future);
+        if (future instanceof CompletableFuture) {
+            ((CompletableFuture<Void>) future).whenComplete((v, ex) -> {
+                outstanding.remove(future);
+                onComplete(write, ex);
+            });
+        } else {
+            write.future = future;
+            synchronized (inFlight) {
+                inFlight.add(write);
+            }
+        }
+    }
+
+    private void poll() {
+        List<Write> done = new ArrayList<>();
+        synchronized (inFlight) {
+            for (Iterator<Write> it = inFlight.iterator(); it.hasNext(); ) {
+                Write write = it.next();
+                if (write.future.isDone()) {
+                    it.remove();
+                    done.add(write);
+                }
+            }
+        }
+
+        for (Write write : done) {
+            outstanding.remove(write.future);
+            complete(write);
+        }
+    }
+
+    private void complete(Write write) {
+        Throwable ex = null;
+        try {
+            write.future.get();
+        } catch (ExecutionException e) {
+            ex = e.getCause();
+        } catch (Exception e) {
+            ex = e;
+        }
+        onComplete(write, ex);
+    }
+
+    private void onComplete(Write write, Throwable ex) {
+        if (ex == null) {
+            completed.increment();
+        } else {
+            failed.increment();
+            plugin.getLogger().log(Level.WARNING, "Vault write to the PermissionService failed", ex);
+        }
+        write.callback.run();
+    }
+
+    public int getPending() {
+        synchronized (pending) {
+            return pending.size();
+        }
+    }
+
+    public long getSubmitted() {
+        return submitted.sum();
+    }
+
+    public long getCoalesced() {
+        return coalesced.sum();
+    }
+
+    public long getCompleted() {
+        return completed.sum();
+    }
+
+    public long getFailed() {
+        return failed.sum();
+    }
+
+    private static final class Write {
+        private final Supplier<FutureAction> action;
+        private final Runnable callback;
+        private Future<Void> future = null;
+
+        private Write(Supplier<FutureAction> action, Runnable callback) {
+            this.action = action;
+            this.callback = callback;
+        }
+    }
+
+    private static final class Key {
+        private final Object subject;
+        private final Type type;
+        private final String node;
+        private final String world;
+
+        private Key(Object subject, Type type, String node, String world) {
+            this.subject = subject;
+            this.type = type;
+            this.node = node;
+            this.world = world;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+            Key other = (Key) o;
+            return subject.equals(other.subject) && type == other.type &&
+                    Objects.equals(node, other.node) && Objects.equals(world, other.world);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(subject, type, node, world);
+        }
+    }
+}
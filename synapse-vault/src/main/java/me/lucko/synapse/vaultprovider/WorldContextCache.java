@@ -0,0 +1,80 @@
+/*
+ * This file is part of synapse, licensed under the MIT License.
+ *
+ *  Copyright (c) lucko (Luck) <luck@lucko.me>
+ *  Copyright (c) contributors
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package me.lucko.synapse.vaultprovider;
+
+import me.lucko.synapse.generic.ContextSet;
+import me.lucko.synapse.permission.PermissionService;
+import me.lucko.synapse.permission.context.Context;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
+
+/**
+ * Caches the context set used to represent each world, so the Vault read
+ * paths don't need to create a new one on every call.
+ *
+ * <p>Only worlds which exist are cached, so callers passing arbitrary world
+ * names can't grow the cache without bound. Entries for a world are removed
+ * when it unloads.</p>
+ */
+public class WorldContextCache {
+    private final PermissionService service;
+    private final Predicate<String> worldExists;
+    private final Map<String, Set<Context>> contexts = new ConcurrentHashMap<>();
+
+    public WorldContextCache(PermissionService service, Predicate<String> worldExists) {
+        this.service = service;
+        this.worldExists = worldExists;
+    }
+
+    public Set<Context> get(String world) {
+        if (world == null) {
+            return ContextSet.empty();
+        }
+
+        Set<Context> set = contexts.get(world);
+        if (set != null) {
+            return set;
+        }
+
+        set = ContextSet.of(service.createContext("world", world));
+        if (!worldExists.test(world)) {
+            return set;
+        }
+        Set<Context> existing = contexts.putIfAbsent(world, set);
+        return existing != null ? existing : set;
+    }
+
+    public void invalidate(String world) {
+        contexts.remove(world);
+    }
+
+    public void invalidateAll() {
+        contexts.clear();
+    }
+}
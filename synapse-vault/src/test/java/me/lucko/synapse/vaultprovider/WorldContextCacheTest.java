@@ -0,0 +1,114 @@
+/*
+ * This file is part of synapse, licensed under the MIT License.
+ *
+ *  Copyright (c) lucko (Luck) <luck@lucko.me>
+ *  Copyright (c) contributors
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package me.lucko.synapse.vaultprovider;
+
+import me.lucko.synapse.generic.ContextSet;
+import me.lucko.synapse.generic.SimpleContext;
+import me.lucko.synapse.permission.PermissionService;
+import me.lucko.synapse.permission.context.Context;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Proxy;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+public class WorldContextCacheTest {
+    private static final int ITERATIONS = 100000;
+    private static final String[] WORLDS = {"world", "world_nether", null};
+
+    private WorldContextCache cache;
+
+    @Before
+    public void setUp() {
+        // only createContext is used by the cache
+        PermissionService service = (PermissionService) Proxy.newProxyInstance(PermissionService.class.getClassLoader(), new Class<?>[]{PermissionService.class}, (proxy, method, args) -> {
+            if (method.getName().equals("createContext")) {
+                return new SimpleContext((String) args[0], (String) args[1]);
+            }
+            throw new UnsupportedOperationException(method.getName());
+        });
+        cache = new WorldContextCache(service, world -> world.equals("world") || world.equals("world_nether"));
+    }
+
+    @Test
+    public void existingWorldsAreCached() {
+        Set<Context> contexts = cache.get("world");
+        assertEquals(ContextSet.of(new SimpleContext("world", "world")), contexts);
+        assertSame(contexts, cache.get("world"));
+
+        cache.invalidate("world");
+        assertNotSame(contexts, cache.get("world"));
+    }
+
+    @Test
+    public void unknownWorldsAreNotCached() {
+        Set<Context> contexts = cache.get("unknown");
+        assertEquals(ContextSet.of(new SimpleContext("world", "unknown")), contexts);
+        assertNotSame(contexts, cache.get("unknown"));
+    }
+
+    @Test
+    public void cachedReadsDoNotAllocate() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+        assumeTrue(threads.isThreadAllocatedMemorySupported() && threads.isThreadAllocatedMemoryEnabled());
+
+        // the first runs load and link classes, which allocates
+        int hash = 0;
+        for (int i = 0; i < 5; i++) {
+            hash += read();
+        }
+
+        long thread = Thread.currentThread().getId();
+        long start = threads.getThreadAllocatedBytes(thread);
+        // the measurement itself may allocate
+        long overhead = threads.getThreadAllocatedBytes(thread) - start;
+
+        start = threads.getThreadAllocatedBytes(thread);
+        hash += read();
+        long allocated = threads.getThreadAllocatedBytes(thread) - start - overhead;
+
+        assertTrue(hash > 0);
+        assertEquals("bytes allocated by " + ITERATIONS + " cached reads", 0, Math.max(0, allocated));
+    }
+
+    private int read() {
+        int hash = 0;
+        for (int i = 0; i < ITERATIONS; i++) {
+            hash += cache.get(WORLDS[i % WORLDS.length]).size();
+        }
+        return hash;
+    }
+}